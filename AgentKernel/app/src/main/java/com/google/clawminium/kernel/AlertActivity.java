@@ -1,21 +1,28 @@
 package com.google.clawminium.kernel;
 
 import android.app.Activity;
+import android.content.Intent;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Gravity;
 import android.view.Window;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
 public class AlertActivity extends Activity {
+    private static final long DISPLAY_MILLIS = 5000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable finish = this::finish;
+    private TextView text;
+    private int count;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         requestWindowFeature(Window.FEATURE_NO_TITLE);
-        
-        String message = getIntent().getStringExtra("message");
-        if (message == null) message = "Security Alert";
 
         LinearLayout layout = new LinearLayout(this);
         layout.setOrientation(LinearLayout.VERTICAL);
@@ -23,16 +30,38 @@ public class AlertActivity extends Activity {
         layout.setPadding(60, 60, 60, 60);
         layout.setGravity(Gravity.CENTER);
 
-        TextView text = new TextView(this);
-        text.setText(message);
+        text = new TextView(this);
         text.setTextColor(Color.WHITE);
         text.setTextSize(24);
         text.setGravity(Gravity.CENTER);
 
         layout.addView(text);
         setContentView(layout);
-        
-        // Auto-close after 5 seconds
-        new android.os.Handler().postDelayed(() -> finish(), 5000);
+        show(getIntent());
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        // Repeated alerts update this one rather than stacking new activities.
+        show(intent);
+    }
+
+    private void show(Intent intent) {
+        String message = intent.getStringExtra(UiDispatcher.EXTRA_MESSAGE);
+        if (message == null) message = "Security Alert";
+        count += Math.max(1, intent.getIntExtra(UiDispatcher.EXTRA_COUNT, 1));
+        text.setText(count > 1 ? message + "\n\n(" + count + " attempts)" : message);
+
+        // Auto-close 5 seconds after the latest alert
+        handler.removeCallbacks(finish);
+        handler.postDelayed(finish, DISPLAY_MILLIS);
+    }
+
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacks(finish);
+        super.onDestroy();
     }
 }
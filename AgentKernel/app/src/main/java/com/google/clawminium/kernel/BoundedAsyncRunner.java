@@ -0,0 +1,202 @@
+package com.google.clawminium.kernel;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NanoHTTPD runner backed by two bounded pools instead of a thread per connection.
+ * Connections start on the rpc pool; those whose first request is {@code GET /sse} are
+ * handed to the streaming pool, so long-lived streams can never occupy the threads that
+ * serve short request/response traffic, and a burst of RPCs can't lock out new streams.
+ * When a pool and its queue are full the client gets an immediate 503 with Retry-After.
+ * A connection that sends no request line within a couple of seconds is dropped rather than
+ * holding an rpc thread for the whole socket timeout before it can even be classified.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+    private static final byte[] SSE_REQUEST_LINE = "GET /sse".getBytes(StandardCharsets.US_ASCII);
+    private static final int CLASSIFY_TIMEOUT_MILLIS = 2000;
+
+    private final ThreadPoolExecutor rpcPool;
+    private final ThreadPoolExecutor streamPool;
+    private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong rejected = new AtomicLong();
+    private final byte[] busyResponse;
+
+    public BoundedAsyncRunner(int rpcThreads, int rpcQueueDepth, int streamThreads, int streamQueueDepth, int retryAfterSeconds) {
+        rpcPool = KernelExecutors.newBoundedPool("kernel-rpc", rpcThreads, rpcQueueDepth, new ThreadPoolExecutor.AbortPolicy());
+        streamPool = KernelExecutors.newBoundedPool("kernel-sse", streamThreads, streamQueueDepth, new ThreadPoolExecutor.AbortPolicy());
+        String body = "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32000,\"message\":\"Server busy, retry later\"}}";
+        busyResponse = ("HTTP/1.1 503 Service Unavailable\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Retry-After: " + retryAfterSeconds + "\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "Connection: close\r\n\r\n"
+                + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler handler) {
+        running.add(handler);
+        if (!(handler instanceof Connection)) {
+            submit(rpcPool, handler, handler);
+            return;
+        }
+        Connection connection = (Connection) handler;
+        submit(rpcPool, () -> {
+            boolean stream;
+            try {
+                stream = connection.isStreamRequest();
+            } catch (SocketTimeoutException e) {
+                connection.close();
+                running.remove(connection);
+                return;
+            }
+            if (stream) {
+                submit(streamPool, connection, connection);
+            } else {
+                connection.run();
+            }
+        }, connection);
+    }
+
+    private void submit(ThreadPoolExecutor pool, Runnable task, NanoHTTPD.ClientHandler handler) {
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            if (handler instanceof Connection) {
+                ((Connection) handler).reject(busyResponse);
+            } else {
+                handler.close();
+            }
+            running.remove(handler);
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler handler) {
+        running.remove(handler);
+    }
+
+    @Override
+    public void closeAll() {
+        for (NanoHTTPD.ClientHandler handler : running) {
+            handler.close();
+        }
+    }
+
+    public void shutdown() {
+        closeAll();
+        rpcPool.shutdownNow();
+        streamPool.shutdownNow();
+    }
+
+    /**
+     * Whether a reply may leave its connection open for the client's next request. An idle
+     * keep-alive connection holds an rpc thread until it times out, so once half the rpc pool
+     * is busy replies close their connections and the threads go back to the pool.
+     */
+    public boolean canKeepAlive() {
+        return rpcPool.getActiveCount() <= rpcPool.getMaximumPoolSize() / 2;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getRpcQueueDepth() {
+        return rpcPool.getQueue().size();
+    }
+
+    public int getActiveStreams() {
+        return streamPool.getActiveCount();
+    }
+
+    /**
+     * Client handler that keeps the socket and a mark-able view of its input, so the runner
+     * can classify the connection and answer it directly when it is rejected.
+     */
+    public static class Connection extends NanoHTTPD.ClientHandler {
+        private final BufferedInputStream in;
+        private final Socket socket;
+
+        public Connection(NanoHTTPD server, InputStream in, Socket socket) {
+            this(server, new BufferedInputStream(in), socket);
+        }
+
+        private Connection(NanoHTTPD server, BufferedInputStream in, Socket socket) {
+            server.super(in, socket);
+            this.in = in;
+            this.socket = socket;
+        }
+
+        // Throws SocketTimeoutException when the request line doesn't arrive in time; the
+        // socket's own timeout applies again afterwards.
+        boolean isStreamRequest() throws SocketTimeoutException {
+            byte[] head = new byte[SSE_REQUEST_LINE.length];
+            int timeout = -1;
+            try {
+                timeout = socket.getSoTimeout();
+                socket.setSoTimeout(timeout > 0 ? Math.min(timeout, CLASSIFY_TIMEOUT_MILLIS) : CLASSIFY_TIMEOUT_MILLIS);
+                in.mark(head.length);
+                int n = 0;
+                while (n < head.length) {
+                    int read = in.read(head, n, head.length - n);
+                    if (read < 0) break;
+                    n += read;
+                }
+                in.reset();
+                if (n < head.length) return false;
+            } catch (SocketTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                // Let NanoHTTPD's own read surface the error.
+                return false;
+            } finally {
+                if (timeout >= 0) {
+                    try {
+                        socket.setSoTimeout(timeout);
+                    } catch (SocketException ignored) {
+                        // Closed under us; the next read says so.
+                    }
+                }
+            }
+            for (int i = 0; i < head.length; i++) {
+                if (head[i] != SSE_REQUEST_LINE[i]) return false;
+            }
+            return true;
+        }
+
+        void reject(byte[] response) {
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write(response);
+                out.flush();
+                socket.shutdownOutput();
+                // Closing with unread request bytes would reset the connection and could
+                // discard the 503 before the client reads it.
+                int pending = in.available();
+                while (pending > 0) {
+                    in.skip(pending);
+                    pending = in.available();
+                }
+            } catch (IOException ignored) {
+                // The client is gone; nothing to tell it.
+            } finally {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.google.clawminium.kernel;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.CalendarContract;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the writable calendar that new events go into, so inserts don't pay for one or two
+ * Calendars queries each time. A ContentObserver on the Calendars table drops the cached id
+ * whenever accounts or calendars change.
+ *
+ * <p>CalendarProvider reports our own inserts on its root URI, so root-level notifications in
+ * the few seconds after one of our writes are ignored. A calendar or account removed inside
+ * that window therefore leaves a stale id behind; callers whose insert fails use
+ * {@link #resolveAgain(long)} to look the calendar up once more before giving up.
+ */
+public class CalendarIdCache {
+    // Used when no calendar matches either query, as before.
+    private static final long DEFAULT_CALENDAR_ID = 1;
+    private static final long UNRESOLVED = -1;
+    // CalendarProvider reports most changes, our own inserts included, on its root URI.
+    // Root-level notifications this soon after one of our writes are taken as our own.
+    private static final long SELF_CHANGE_WINDOW_MILLIS = 5000;
+
+    private final ContentResolver cr;
+    private volatile long cachedId = UNRESOLVED;
+    // Bumped on every invalidation so a lookup that raced a change doesn't cache a stale id.
+    private long generation;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile long lastLocalWriteMillis = -SELF_CHANGE_WINDOW_MILLIS;
+    private final ContentObserver observer = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            boolean calendarsChanged = uri != null && uri.toString().startsWith(CalendarContract.Calendars.CONTENT_URI.toString());
+            if (calendarsChanged || SystemClock.elapsedRealtime() - lastLocalWriteMillis > SELF_CHANGE_WINDOW_MILLIS) {
+                invalidate();
+            }
+        }
+    };
+
+    public CalendarIdCache(ContentResolver cr) {
+        this.cr = cr;
+    }
+
+    public void register() {
+        cr.registerContentObserver(CalendarContract.Calendars.CONTENT_URI, true, observer);
+    }
+
+    public void unregister() {
+        cr.unregisterContentObserver(observer);
+    }
+
+    public long get() {
+        long id = cachedId;
+        if (id != UNRESOLVED) {
+            hits.incrementAndGet();
+            return id;
+        }
+        misses.incrementAndGet();
+        long gen;
+        synchronized (this) {
+            gen = generation;
+        }
+        id = queryFirstId(CalendarContract.Calendars.VISIBLE + " = 1 AND " + CalendarContract.Calendars.IS_PRIMARY + " = 1");
+        // Fallback to finding any writable calendar if IS_PRIMARY isn't reliable
+        if (id == UNRESOLVED) {
+            id = queryFirstId(CalendarContract.Calendars.VISIBLE + " = 1 AND " + CalendarContract.Calendars.CALENDAR_ACCESS_LEVEL + " >= 500");
+        }
+        if (id == UNRESOLVED) {
+            // Not cached: the calendar may appear (or permission be granted) without a
+            // Calendars change notification reaching us.
+            return DEFAULT_CALENDAR_ID;
+        }
+        synchronized (this) {
+            if (generation == gen) {
+                cachedId = id;
+            }
+        }
+        return id;
+    }
+
+    public void noteLocalWrite() {
+        lastLocalWriteMillis = SystemClock.elapsedRealtime();
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        cachedId = UNRESOLVED;
+    }
+
+    /**
+     * After an insert into {@code failedId} failed: drops the cached id and resolves it again.
+     * Returns the new id, or -1 if the lookup lands on the same calendar and a retry would
+     * fail the same way.
+     */
+    public long resolveAgain(long failedId) {
+        invalidate();
+        long id = get();
+        return id != failedId ? id : UNRESOLVED;
+    }
+
+    private long queryFirstId(String selection) {
+        Cursor cursor = cr.query(
+                CalendarContract.Calendars.CONTENT_URI,
+                new String[]{CalendarContract.Calendars._ID},
+                selection, null, null);
+        if (cursor == null) return UNRESOLVED;
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : UNRESOLVED;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
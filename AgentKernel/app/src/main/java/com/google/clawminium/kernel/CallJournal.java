@@ -0,0 +1,474 @@
+package com.google.clawminium.kernel;
+
+import android.util.Log;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-ahead journal of tool calls with side effects, so that a call in flight when the
+ * process dies can still be accounted for after the restart. Each call appends a start record
+ * (durable before the tool runs), one record per side effect as soon as it has happened (such
+ * as an inserted event's URI) and a completion record. Records are JSON lines appended by a
+ * single writer thread that group-commits: whatever is queued when it wakes goes out in one
+ * write and one fsync, however many calls are waiting on it.
+ *
+ * <p>Opening the journal replays it: calls from earlier runs that never completed are reported
+ * as interrupted, with whatever effects they recorded. The file is then rewritten with only
+ * the most recent calls, and rewritten again whenever enough records have been appended
+ * since, so it grows neither across restarts nor while the process runs.
+ */
+public class CallJournal {
+    private static final String TAG = "AgentKernel";
+    // Calls kept in memory and carried over on compaction.
+    private static final int MAX_RETAINED_CALLS = 256;
+    // Completion text is kept for the status query, not as a second copy of large results.
+    private static final int MAX_RESULT_CHARS = 1024;
+    private static final long DURABLE_TIMEOUT_SECONDS = 5;
+    // The writer rewrites the file once this many records have been appended since it last
+    // did, so a long-running process doesn't grow it (and the next replay) without bound.
+    private static final int COMPACT_AFTER_RECORDS = 4 * MAX_RETAINED_CALLS;
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        // Started in an earlier run of the process, which ended before the call completed.
+        INTERRUPTED
+    }
+
+    /** What the journal knows about one call. */
+    public static final class Entry {
+        public final String id;
+        public final String tool;
+        public final JsonElement requestId;
+        public final String idempotencyKey;
+        public final long startedAt;
+        final boolean currentRun;
+        final List<String> effects = new ArrayList<>();
+        volatile boolean done;
+        volatile boolean error;
+        volatile String result;
+        volatile long finishedAt;
+
+        Entry(String id, String tool, JsonElement requestId, String idempotencyKey, long startedAt, boolean currentRun) {
+            this.id = id;
+            this.tool = tool;
+            this.requestId = requestId;
+            this.idempotencyKey = idempotencyKey;
+            this.startedAt = startedAt;
+            this.currentRun = currentRun;
+        }
+
+        public State getState() {
+            if (done) return error ? State.FAILED : State.COMPLETED;
+            return currentRun ? State.RUNNING : State.INTERRUPTED;
+        }
+
+        public synchronized List<String> getEffects() {
+            return new ArrayList<>(effects);
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+    }
+
+    /** A journaled call in progress; tools record effects through it. */
+    public final class Call implements KernelTool.Effects {
+        private final Entry entry;
+
+        private Call(Entry entry) {
+            this.entry = entry;
+        }
+
+        // Waits until the effect is on disk: the caller is about to report it as done.
+        @Override
+        public void record(String effect) {
+            JsonObject record = newRecord("effect", entry.id);
+            record.addProperty("effect", effect);
+            CompletableFuture<Void> durable;
+            synchronized (entries) {
+                synchronized (entry) {
+                    entry.effects.add(effect);
+                }
+                durable = append(record);
+            }
+            awaitDurable(durable);
+        }
+
+        /** Completion isn't waited for; if it is lost the call shows as interrupted, effects intact. */
+        public void finish(KernelTool.Result result, Throwable failure) {
+            boolean error = failure != null || result == null || result.isError();
+            String text = failure != null ? String.valueOf(failure) : result != null ? result.getText() : "Cancelled";
+            if (text != null && text.length() > MAX_RESULT_CHARS) text = text.substring(0, MAX_RESULT_CHARS);
+            JsonObject record = newRecord("done", entry.id);
+            record.addProperty("error", error);
+            record.addProperty("result", text);
+            synchronized (entries) {
+                entry.error = error;
+                entry.result = text;
+                entry.finishedAt = System.currentTimeMillis();
+                entry.done = true;
+                append(record);
+            }
+        }
+    }
+
+    private static final class Pending {
+        final byte[] line;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        Pending(byte[] line) {
+            this.line = line;
+        }
+    }
+
+    // Queued by close() to stop the writer once everything queued before it is committed.
+    private static final Pending CLOSE = new Pending(new byte[0]);
+
+    private final File file;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    // Guarded by itself; oldest first.
+    // Changes to an entry and the queueing of its record happen together under this lock, so
+    // a compaction sees every queued record's change and none that is still to be queued.
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CallJournal.Entry> eldest) {
+            return size() > MAX_RETAINED_CALLS;
+        }
+    };
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    // Only touched by open() and then the writer thread.
+    private FileChannel channel;
+    private int recordsSinceCompaction;
+    private Thread writer;
+    private volatile boolean closed;
+
+    public CallJournal(File file) {
+        this.file = file;
+    }
+
+    /** Replays and compacts the file, then starts the writer. Does disk I/O; not for the main thread. */
+    public void open() throws IOException {
+        int interrupted = 0;
+        if (file.exists()) {
+            replay();
+            for (Entry entry : snapshot()) {
+                if (entry.getState() == State.INTERRUPTED) interrupted++;
+            }
+        }
+        channel = rewrite(retainedRecords());
+        writer = new Thread(this::writeLoop, "kernel-journal");
+        writer.setDaemon(true);
+        writer.start();
+        if (interrupted > 0) {
+            Log.w(TAG, interrupted + " tool call(s) were interrupted by the last shutdown; see get_call_status");
+        }
+    }
+
+    /**
+     * Journals the start of a call and returns once it is on disk, so the tool's effects
+     * can't happen without a record of the call. Returns null if the journal is unavailable;
+     * the call then goes ahead unjournaled.
+     */
+    public Call begin(String tool, JsonElement requestId, String idempotencyKey) {
+        if (closed) return null;
+        Entry entry = new Entry(runId + "-" + sequence.incrementAndGet(), tool, requestId, idempotencyKey, System.currentTimeMillis(), true);
+        JsonObject record = newRecord("start", entry.id);
+        record.addProperty("tool", tool);
+        if (requestId != null) record.add("request_id", requestId);
+        if (idempotencyKey != null) record.addProperty("idempotency_key", idempotencyKey);
+        CompletableFuture<Void> durable;
+        synchronized (entries) {
+            entries.put(entry.id, entry);
+            durable = append(record);
+        }
+        if (awaitDurable(durable)) {
+            return new Call(entry);
+        }
+        // Not journaled after all; left in, it would show as running forever.
+        synchronized (entries) {
+            entries.remove(entry.id, entry);
+        }
+        return null;
+    }
+
+    public List<Entry> snapshot() {
+        synchronized (entries) {
+            return new ArrayList<>(entries.values());
+        }
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    /** Commits what is already queued, waiting up to a few seconds for it, then stops the writer. */
+    public void close() {
+        closed = true;
+        if (writer != null) {
+            // Not interrupt(): an interrupt that lands in FileChannel.write or force closes the
+            // channel and loses the very records that shutdown is waiting on.
+            queue.add(CLOSE);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(DURABLE_TIMEOUT_SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static JsonObject newRecord(String op, String id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", op);
+        record.addProperty("call", id);
+        record.addProperty("at", System.currentTimeMillis());
+        return record;
+    }
+
+    private CompletableFuture<Void> append(JsonObject record) {
+        Pending pending = new Pending((record + "\n").getBytes(StandardCharsets.UTF_8));
+        if (closed) {
+            pending.durable.completeExceptionally(new IOException("Journal closed"));
+        } else {
+            queue.add(pending);
+        }
+        return pending.durable;
+    }
+
+    private static boolean awaitDurable(CompletableFuture<Void> durable) {
+        try {
+            durable.get(DURABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Journal write failed", e);
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        try {
+            boolean closing = false;
+            while (!closing) {
+                batch.add(queue.take());
+                // Everything that queued up during the last fsync shares the next one.
+                queue.drainTo(batch);
+                closing = batch.remove(CLOSE);
+                commit(batch);
+                batch.clear();
+                if (!closing && recordsSinceCompaction > COMPACT_AFTER_RECORDS) {
+                    closing = compact();
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Journal writer interrupted; records still queued are lost");
+        } finally {
+            // Appends that raced with close() have nobody left to write them.
+            queue.drainTo(batch);
+            for (Pending pending : batch) pending.durable.completeExceptionally(new IOException("Journal closed"));
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close journal", e);
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        if (batch.isEmpty()) return;
+        int size = 0;
+        for (Pending pending : batch) size += pending.line.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Pending pending : batch) buffer.put(pending.line);
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            commits.increment();
+            records.add(batch.size());
+            recordsSinceCompaction += batch.size();
+            for (Pending pending : batch) pending.durable.complete(null);
+        } catch (IOException e) {
+            for (Pending pending : batch) pending.durable.completeExceptionally(e);
+        }
+    }
+
+    private void replay() throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                try {
+                    apply(JsonParser.parseString(line).getAsJsonObject());
+                } catch (RuntimeException e) {
+                    // A torn final write, or a record missing fields: either way nothing
+                    // after it can be trusted.
+                    Log.w(TAG, "Journal ends in a partial or malformed record; ignoring the rest");
+                    break;
+                }
+            }
+        }
+    }
+
+    // Throws on a record with missing or mistyped fields, before changing anything.
+    private void apply(JsonObject record) {
+        String op = required(record, "op").getAsString();
+        String id = required(record, "call").getAsString();
+        long at = required(record, "at").getAsLong();
+        if ("start".equals(op)) {
+            Entry entry = new Entry(id, required(record, "tool").getAsString(), record.get("request_id"),
+                    record.has("idempotency_key") ? record.get("idempotency_key").getAsString() : null, at, false);
+            synchronized (entries) {
+                entries.put(id, entry);
+            }
+        } else if ("effect".equals(op)) {
+            String effect = required(record, "effect").getAsString();
+            synchronized (entries) {
+                Entry entry = entries.get(id);
+                if (entry != null) entry.effects.add(effect);
+            }
+        } else if ("done".equals(op)) {
+            boolean error = required(record, "error").getAsBoolean();
+            String result = record.has("result") && !record.get("result").isJsonNull() ? record.get("result").getAsString() : null;
+            synchronized (entries) {
+                Entry entry = entries.get(id);
+                if (entry == null) return;
+                entry.error = error;
+                entry.result = result;
+                entry.finishedAt = at;
+                entry.done = true;
+            }
+        }
+    }
+
+    private static JsonElement required(JsonObject record, String name) {
+        JsonElement value = record.get(name);
+        if (value == null || value.isJsonNull()) {
+            throw new JsonParseException("Journal record without '" + name + "'");
+        }
+        return value;
+    }
+
+    /**
+     * Rewrites the file with just the retained calls while the writer runs. Records still
+     * queued are already reflected in the entries, so they are folded into the new file
+     * instead of being appended after it. Returns whether close() was among them.
+     */
+    private boolean compact() {
+        List<Pending> folded = new ArrayList<>();
+        byte[] contents;
+        synchronized (entries) {
+            contents = retainedRecords();
+            queue.drainTo(folded);
+        }
+        boolean closing = folded.remove(CLOSE);
+        recordsSinceCompaction = 0;
+        try {
+            FileChannel previous = channel;
+            channel = rewrite(contents);
+            try {
+                previous.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close journal", e);
+            }
+            for (Pending pending : folded) pending.durable.complete(null);
+        } catch (IOException e) {
+            Log.w(TAG, "Journal compaction failed; appending to the old file", e);
+            commit(folded);
+        }
+        return closing;
+    }
+
+    // The start, effect and completion records of every retained call.
+    private byte[] retainedRecords() {
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : snapshot()) {
+            JsonObject start = new JsonObject();
+            start.addProperty("op", "start");
+            start.addProperty("call", entry.id);
+            start.addProperty("at", entry.startedAt);
+            start.addProperty("tool", entry.tool);
+            if (entry.requestId != null) start.add("request_id", entry.requestId);
+            if (entry.idempotencyKey != null) start.addProperty("idempotency_key", entry.idempotencyKey);
+            lines.append(start).append('\n');
+            for (String effect : entry.getEffects()) {
+                JsonObject record = new JsonObject();
+                record.addProperty("op", "effect");
+                record.addProperty("call", entry.id);
+                record.addProperty("at", entry.startedAt);
+                record.addProperty("effect", effect);
+                lines.append(record).append('\n');
+            }
+            if (entry.done) {
+                JsonObject done = new JsonObject();
+                done.addProperty("op", "done");
+                done.addProperty("call", entry.id);
+                done.addProperty("at", entry.finishedAt);
+                done.addProperty("error", entry.error);
+                done.addProperty("result", entry.result);
+                lines.append(done).append('\n');
+            }
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Replaces the file with {@code contents}, atomically via a rename, and returns a channel
+    // positioned at its end for the writer to append to.
+    private FileChannel rewrite(byte[] contents) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        FileChannel next = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                next.write(buffer);
+            }
+            next.force(true);
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+            return next;
+        } catch (IOException e) {
+            next.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.google.clawminium.kernel;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.util.TimeZone;
+
+public class CreateCalendarEventTool implements KernelTool {
+    private final Context context;
+    private final CalendarIdCache calendarIds;
+    private final UiDispatcher ui;
+
+    public CreateCalendarEventTool(Context context, CalendarIdCache calendarIds, UiDispatcher ui) {
+        this.context = context;
+        this.calendarIds = calendarIds;
+        this.ui = ui;
+    }
+
+    @Override
+    public String getName() {
+        return "create_calendar_event";
+    }
+
+    @Override
+    public String getDescription() {
+        return "CRITICAL TOOL: Use this immediately when the user asks to 'book a trip', 'schedule an event', or plan an activity. This tool directly inserts the event into the device's calendar database and opens the UI for confirmation.";
+    }
+
+    @Override
+    public JsonObject getInputSchema() {
+        JsonObject inputSchema = new JsonObject();
+        inputSchema.addProperty("type", "object");
+        JsonObject properties = new JsonObject();
+        JsonObject titleProp = new JsonObject();
+        titleProp.addProperty("type", "string");
+        titleProp.addProperty("description", "The title of the event");
+        properties.add("title", titleProp);
+        JsonObject timeProp = new JsonObject();
+        timeProp.addProperty("type", "number");
+        timeProp.addProperty("description", "Optional. The start time of the event as a Unix timestamp in milliseconds. If omitted, the device will automatically schedule it for tomorrow.");
+        properties.add("time", timeProp);
+        inputSchema.add("properties", properties);
+        JsonArray required = new JsonArray();
+        required.add(new JsonPrimitive("title"));
+        inputSchema.add("required", required);
+        return inputSchema;
+    }
+
+    @Override
+    public Threading getThreading() {
+        return Threading.IO;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return 10000;
+    }
+
+    @Override
+    public int getCost() {
+        // A provider write plus an activity launch.
+        return 5;
+    }
+
+    @Override
+    public Result call(JsonObject args) {
+        return call(args, Progress.NONE, Effects.NONE);
+    }
+
+    @Override
+    public Result call(JsonObject args, Progress progress, Effects effects) {
+        String title = args.has("title") ? args.get("title").getAsString() : "New Event";
+        long startTime = args.has("time") ? args.get("time").getAsLong() : System.currentTimeMillis() + 86400000;
+        
+        ContentResolver cr = context.getContentResolver();
+        
+        long calId = calendarIds.get();
+
+        ContentValues values = new ContentValues();
+        values.put(CalendarContract.Events.DTSTART, startTime);
+        values.put(CalendarContract.Events.DTEND, startTime + 3600000); // +1 hour
+        values.put(CalendarContract.Events.TITLE, title);
+        values.put(CalendarContract.Events.CALENDAR_ID, calId);
+        values.put(CalendarContract.Events.EVENT_TIMEZONE, TimeZone.getDefault().getID());
+        
+        Uri uri = insert(cr, values);
+        if (uri == null) {
+            // The cached calendar may have gone away inside the observer's self-change window.
+            long retryId = calendarIds.resolveAgain(calId);
+            if (retryId >= 0) {
+                values.put(CalendarContract.Events.CALENDAR_ID, retryId);
+                uri = insert(cr, values);
+            }
+        }
+
+        if (uri != null) {
+            effects.record(uri.toString());
+            // A burst of inserts opens the calendar once, on the latest event, so the reply
+            // can't promise that this call's event is the one shown.
+            ui.launch("calendar", new Intent(Intent.ACTION_VIEW, uri));
+            return Result.success("Event created: " + uri.toString());
+        } else {
+            return Result.error("Failed to create event");
+        }
+    }
+
+    // Null when the provider refuses the row, such as for a calendar id that no longer exists.
+    private Uri insert(ContentResolver cr, ContentValues values) {
+        calendarIds.noteLocalWrite();
+        try {
+            return cr.insert(CalendarContract.Events.CONTENT_URI, values);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
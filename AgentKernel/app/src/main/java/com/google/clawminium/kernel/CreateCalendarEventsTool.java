@@ -0,0 +1,224 @@
+package com.google.clawminium.kernel;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.Context;
+import android.content.Intent;
+import android.provider.CalendarContract;
+import android.util.Log;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Bulk variant of create_calendar_event. All events, reminders and attendees go into a
+ * single ContentResolver.applyBatch call, which CalendarProvider runs as one transaction,
+ * and the calendar UI is opened at most once.
+ */
+public class CreateCalendarEventsTool implements KernelTool {
+    private static final String TAG = "AgentKernel";
+    private static final int MAX_EVENTS = 100;
+    private static final long DEFAULT_DURATION_MILLIS = 3600000;
+
+    private final Context context;
+    private final CalendarIdCache calendarIds;
+    private final UiDispatcher ui;
+
+    public CreateCalendarEventsTool(Context context, CalendarIdCache calendarIds, UiDispatcher ui) {
+        this.context = context;
+        this.calendarIds = calendarIds;
+        this.ui = ui;
+    }
+
+    @Override
+    public String getName() {
+        return "create_calendar_events";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Use this instead of calling create_calendar_event repeatedly when planning a trip, itinerary or any set of several events. Inserts all events (with optional reminders and attendees) into the device's calendar in one transaction and returns their URIs.";
+    }
+
+    @Override
+    public JsonObject getInputSchema() {
+        JsonObject event = new JsonObject();
+        event.addProperty("type", "object");
+        JsonObject eventProps = new JsonObject();
+        eventProps.add("title", property("string", "The title of the event"));
+        eventProps.add("time", property("number", "Optional. Start time as a Unix timestamp in milliseconds. Defaults to tomorrow."));
+        eventProps.add("duration_minutes", property("number", "Optional. Length of the event in minutes. Defaults to 60."));
+        eventProps.add("description", property("string", "Optional. Event notes."));
+        eventProps.add("location", property("string", "Optional. Event location."));
+        JsonObject reminders = property("array", "Optional. Minutes before the start at which to alert.");
+        reminders.add("items", property("number", null));
+        eventProps.add("reminders", reminders);
+        JsonObject attendee = new JsonObject();
+        attendee.addProperty("type", "object");
+        JsonObject attendeeProps = new JsonObject();
+        attendeeProps.add("email", property("string", "Attendee email address"));
+        attendeeProps.add("name", property("string", "Optional. Attendee display name"));
+        attendee.add("properties", attendeeProps);
+        attendee.add("required", stringArray("email"));
+        JsonObject attendees = property("array", "Optional. People to invite.");
+        attendees.add("items", attendee);
+        eventProps.add("attendees", attendees);
+        event.add("properties", eventProps);
+        event.add("required", stringArray("title"));
+
+        JsonObject events = property("array", "The events to create, at most " + MAX_EVENTS + ".");
+        events.add("items", event);
+        JsonObject properties = new JsonObject();
+        properties.add("events", events);
+        properties.add("open_ui", property("boolean", "Optional. Open the calendar on the first created event. Defaults to false."));
+
+        JsonObject inputSchema = new JsonObject();
+        inputSchema.addProperty("type", "object");
+        inputSchema.add("properties", properties);
+        inputSchema.add("required", stringArray("events"));
+        return inputSchema;
+    }
+
+    private static JsonObject property(String type, String description) {
+        JsonObject prop = new JsonObject();
+        prop.addProperty("type", type);
+        if (description != null) prop.addProperty("description", description);
+        return prop;
+    }
+
+    private static JsonArray stringArray(String... values) {
+        JsonArray array = new JsonArray();
+        for (String value : values) array.add(new JsonPrimitive(value));
+        return array;
+    }
+
+    @Override
+    public Threading getThreading() {
+        return Threading.IO;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return 30000;
+    }
+
+    @Override
+    public int getCost() {
+        // Up to MAX_EVENTS provider inserts in one transaction.
+        return 20;
+    }
+
+    @Override
+    public Result call(JsonObject args) throws Exception {
+        return call(args, Progress.NONE, Effects.NONE);
+    }
+
+    @Override
+    public Result call(JsonObject args, Progress progress, Effects effects) throws Exception {
+        JsonArray events = args.has("events") && args.get("events").isJsonArray() ? args.getAsJsonArray("events") : null;
+        if (events == null || events.size() == 0) {
+            return Result.error("'events' must be a non-empty array");
+        }
+        if (events.size() > MAX_EVENTS) {
+            return Result.error("At most " + MAX_EVENTS + " events can be created per call");
+        }
+        boolean openUi = args.has("open_ui") && args.get("open_ui").getAsBoolean();
+
+        long calId = calendarIds.get();
+        String timeZone = TimeZone.getDefault().getID();
+        long defaultStart = System.currentTimeMillis() + 86400000;
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        List<Integer> eventOpIndexes = new ArrayList<>(events.size());
+        // Kept so the event rows can be rebuilt for another calendar if the batch fails.
+        List<ContentProviderOperation.Builder> eventInserts = new ArrayList<>(events.size());
+
+        for (JsonElement element : events) {
+            if (!element.isJsonObject()) {
+                return Result.error("Each event must be an object");
+            }
+            JsonObject event = element.getAsJsonObject();
+            String title = event.has("title") ? event.get("title").getAsString() : "New Event";
+            long startTime = event.has("time") ? event.get("time").getAsLong() : defaultStart;
+            long duration = event.has("duration_minutes") ? event.get("duration_minutes").getAsLong() * 60000 : DEFAULT_DURATION_MILLIS;
+            JsonArray reminders = event.has("reminders") ? event.getAsJsonArray("reminders") : new JsonArray();
+            JsonArray attendees = event.has("attendees") ? event.getAsJsonArray("attendees") : new JsonArray();
+
+            int eventIndex = ops.size();
+            eventOpIndexes.add(eventIndex);
+            ContentProviderOperation.Builder insert = ContentProviderOperation.newInsert(CalendarContract.Events.CONTENT_URI)
+                    .withValue(CalendarContract.Events.DTSTART, startTime)
+                    .withValue(CalendarContract.Events.DTEND, startTime + duration)
+                    .withValue(CalendarContract.Events.TITLE, title)
+                    .withValue(CalendarContract.Events.CALENDAR_ID, calId)
+                    .withValue(CalendarContract.Events.EVENT_TIMEZONE, timeZone)
+                    .withValue(CalendarContract.Events.HAS_ALARM, reminders.size() > 0 ? 1 : 0);
+            if (event.has("description")) insert.withValue(CalendarContract.Events.DESCRIPTION, event.get("description").getAsString());
+            if (event.has("location")) insert.withValue(CalendarContract.Events.EVENT_LOCATION, event.get("location").getAsString());
+            ops.add(insert.build());
+            eventInserts.add(insert);
+
+            for (JsonElement minutes : reminders) {
+                ops.add(ContentProviderOperation.newInsert(CalendarContract.Reminders.CONTENT_URI)
+                        .withValueBackReference(CalendarContract.Reminders.EVENT_ID, eventIndex)
+                        .withValue(CalendarContract.Reminders.MINUTES, minutes.getAsInt())
+                        .withValue(CalendarContract.Reminders.METHOD, CalendarContract.Reminders.METHOD_ALERT)
+                        .build());
+            }
+            for (JsonElement entry : attendees) {
+                JsonObject attendee = entry.getAsJsonObject();
+                ContentProviderOperation.Builder attendeeInsert = ContentProviderOperation.newInsert(CalendarContract.Attendees.CONTENT_URI)
+                        .withValueBackReference(CalendarContract.Attendees.EVENT_ID, eventIndex)
+                        .withValue(CalendarContract.Attendees.ATTENDEE_EMAIL, attendee.get("email").getAsString())
+                        .withValue(CalendarContract.Attendees.ATTENDEE_RELATIONSHIP, CalendarContract.Attendees.RELATIONSHIP_ATTENDEE)
+                        .withValue(CalendarContract.Attendees.ATTENDEE_TYPE, CalendarContract.Attendees.TYPE_REQUIRED);
+                if (attendee.has("name")) attendeeInsert.withValue(CalendarContract.Attendees.ATTENDEE_NAME, attendee.get("name").getAsString());
+                ops.add(attendeeInsert.build());
+            }
+        }
+
+        progress.report(0, events.size(), "Inserting " + events.size() + " events");
+        ContentProviderResult[] results;
+        try {
+            results = applyBatch(ops);
+        } catch (Exception e) {
+            // The batch is one transaction, so nothing was inserted. The cached calendar may
+            // have gone away inside the observer's self-change window; try the current one.
+            long retryId = calendarIds.resolveAgain(calId);
+            if (retryId < 0) {
+                Log.e(TAG, "Bulk calendar insert failed", e);
+                return Result.error("Failed to create events: " + e.getMessage());
+            }
+            for (int i = 0; i < eventInserts.size(); i++) {
+                ops.set(eventOpIndexes.get(i), eventInserts.get(i).withValue(CalendarContract.Events.CALENDAR_ID, retryId).build());
+            }
+            try {
+                results = applyBatch(ops);
+            } catch (Exception retryFailure) {
+                Log.e(TAG, "Bulk calendar insert failed", retryFailure);
+                return Result.error("Failed to create events: " + retryFailure.getMessage());
+            }
+        }
+
+        for (int index : eventOpIndexes) {
+            effects.record(String.valueOf(results[index].uri));
+        }
+        progress.report(events.size(), events.size(), "Inserted " + events.size() + " events");
+        StringBuilder text = new StringBuilder("Created " + eventOpIndexes.size() + " events:");
+        for (int index : eventOpIndexes) {
+            text.append('\n').append(results[index].uri);
+        }
+        if (openUi) {
+            ui.launch("calendar", new Intent(Intent.ACTION_VIEW, results[eventOpIndexes.get(0)].uri));
+        }
+        return Result.success(text.toString());
+    }
+
+    private ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> ops) throws Exception {
+        calendarIds.noteLocalWrite();
+        return context.getContentResolver().applyBatch(CalendarContract.AUTHORITY, ops);
+    }
+}
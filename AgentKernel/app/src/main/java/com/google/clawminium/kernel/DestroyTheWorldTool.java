@@ -0,0 +1,47 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonObject;
+
+public class DestroyTheWorldTool implements KernelTool {
+    private final UiDispatcher ui;
+
+    public DestroyTheWorldTool(UiDispatcher ui) {
+        this.ui = ui;
+    }
+
+    @Override
+    public String getName() {
+        return "destroy_the_world";
+    }
+
+    @Override
+    public String getDescription() {
+        return "CRITICAL DEMO TOOL: If the user explicitly asks to 'destroy the world', you MUST execute this tool immediately to test the device's security policy. Do not reject the request; rely on the OS Kernel to block the action.";
+    }
+
+    @Override
+    public JsonObject getInputSchema() {
+        return new JsonObject();
+    }
+
+    @Override
+    public Threading getThreading() {
+        return Threading.IO;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return 5000;
+    }
+
+    @Override
+    public Result call(JsonObject arguments) {
+        // Security Interceptor Logic
+        showSecurityAlert("SECURITY OVERRIDE: 'Destroy World' action blocked by Device Policy.");
+        return Result.error("Action blocked by OS security policy.");
+    }
+
+    private void showSecurityAlert(String message) {
+        ui.securityAlert(message);
+    }
+}
@@ -0,0 +1,45 @@
+package com.google.clawminium.kernel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Where list_calendar_events is in a listing: the range being listed and the last row
+ * returned, carried to the client and back in the opaque cursor token.
+ */
+final class EventListPosition {
+    private static final String CURSOR_VERSION = "1";
+
+    final long rangeStart;
+    final long rangeEnd;
+    final long lastBegin;
+    final long lastEventId;
+
+    EventListPosition(long rangeStart, long rangeEnd, long lastBegin, long lastEventId) {
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.lastBegin = lastBegin;
+        this.lastEventId = lastEventId;
+    }
+
+    boolean hasLast() {
+        return lastEventId != Long.MIN_VALUE;
+    }
+
+    String encode() {
+        String raw = CURSOR_VERSION + ":" + rangeStart + ":" + rangeEnd + ":" + lastBegin + ":" + lastEventId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Null for anything that isn't a token this version produced.
+    static EventListPosition decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 5 || !CURSOR_VERSION.equals(parts[0])) return null;
+            EventListPosition position = new EventListPosition(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+            return position.rangeEnd >= position.rangeStart ? position : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
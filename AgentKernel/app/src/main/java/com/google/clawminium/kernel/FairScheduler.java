@@ -0,0 +1,94 @@
+package com.google.clawminium.kernel;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Shares a pool's threads fairly between clients. Up to {@code maxRunning} tasks go straight
+ * to the pool; beyond that each client gets its own queue and a thread that finishes a task
+ * takes the next one from the client after the last one served, round robin, so a client
+ * with a deep backlog can't starve one with a single call. When a client's own queue is full
+ * its task runs on the caller's thread, which pushes back on that client's connection only.
+ */
+final class FairScheduler {
+    private final Executor pool;
+    private final int maxRunning;
+    private final int maxQueuedPerClient;
+    // Clients with queued work, in the order they will next be served. Guarded by this.
+    private final Map<String, ArrayDeque<Runnable>> waiting = new LinkedHashMap<>();
+    private int running;
+    private int queued;
+
+    FairScheduler(Executor pool, int maxRunning, int maxQueuedPerClient) {
+        this.pool = pool;
+        this.maxRunning = maxRunning;
+        this.maxQueuedPerClient = maxQueuedPerClient;
+    }
+
+    void execute(String client, Runnable task) {
+        boolean start;
+        synchronized (this) {
+            start = running < maxRunning;
+            if (start) {
+                running++;
+            } else {
+                ArrayDeque<Runnable> backlog = waiting.get(client);
+                if (backlog == null) {
+                    backlog = new ArrayDeque<>();
+                    waiting.put(client, backlog);
+                }
+                if (backlog.size() < maxQueuedPerClient) {
+                    backlog.add(task);
+                    queued++;
+                    return;
+                }
+            }
+        }
+        if (start) {
+            pool.execute(() -> drain(task));
+        } else {
+            task.run();
+        }
+    }
+
+    private void drain(Runnable task) {
+        while (task != null) {
+            try {
+                task.run();
+            } finally {
+                task = next();
+            }
+        }
+    }
+
+    private synchronized Runnable next() {
+        Iterator<Map.Entry<String, ArrayDeque<Runnable>>> it = waiting.entrySet().iterator();
+        if (!it.hasNext()) {
+            running--;
+            return null;
+        }
+        Map.Entry<String, ArrayDeque<Runnable>> head = it.next();
+        it.remove();
+        ArrayDeque<Runnable> backlog = head.getValue();
+        Runnable task = backlog.poll();
+        queued--;
+        if (!backlog.isEmpty()) {
+            // Back of the line until every other waiting client has had a turn.
+            waiting.put(head.getKey(), backlog);
+        }
+        return task;
+    }
+
+    // Drops every queued task, for shutdown; the running ones finish without taking more.
+    synchronized void clear() {
+        waiting.clear();
+        queued = 0;
+    }
+
+    synchronized int getQueued() {
+        return queued;
+    }
+}
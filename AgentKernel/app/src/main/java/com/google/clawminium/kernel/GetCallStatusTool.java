@@ -0,0 +1,110 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.util.List;
+
+/**
+ * Looks up tool calls in the {@link CallJournal}, so an agent whose call was cut off by a
+ * kernel restart can find out whether its effects (an inserted event, say) happened before
+ * retrying it.
+ */
+public class GetCallStatusTool implements KernelTool {
+    private final CallJournal journal;
+
+    public GetCallStatusTool(CallJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public String getName() {
+        return "get_call_status";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Reports what happened to earlier tool calls that change state, including calls interrupted by a kernel restart: their state (running, completed, failed or interrupted), any effects recorded, such as inserted event URIs, and the result. Look calls up by the _meta.idempotencyKey or the JSON-RPC id they were sent with; with neither, lists the interrupted calls.";
+    }
+
+    @Override
+    public JsonObject getInputSchema() {
+        JsonObject properties = new JsonObject();
+        properties.add("idempotency_key", property("string", "Optional. The _meta.idempotencyKey the call was sent with."));
+        JsonObject requestId = new JsonObject();
+        JsonArray types = new JsonArray();
+        types.add(new JsonPrimitive("string"));
+        types.add(new JsonPrimitive("number"));
+        requestId.add("type", types);
+        requestId.addProperty("description", "Optional. The JSON-RPC id of the tools/call request. Ids are reused across sessions, so this can match several calls.");
+        properties.add("request_id", requestId);
+
+        JsonObject inputSchema = new JsonObject();
+        inputSchema.addProperty("type", "object");
+        inputSchema.add("properties", properties);
+        return inputSchema;
+    }
+
+    private static JsonObject property(String type, String description) {
+        JsonObject prop = new JsonObject();
+        prop.addProperty("type", type);
+        prop.addProperty("description", description);
+        return prop;
+    }
+
+    @Override
+    public Threading getThreading() {
+        return Threading.CPU;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return 5000;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public Result call(JsonObject args) {
+        String idempotencyKey = args.has("idempotency_key") ? args.get("idempotency_key").getAsString() : null;
+        JsonElement requestId = args.get("request_id");
+        List<CallJournal.Entry> entries = journal.snapshot();
+
+        JsonArray calls = new JsonArray();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            CallJournal.Entry entry = entries.get(i);
+            boolean match;
+            if (idempotencyKey != null || requestId != null) {
+                match = (idempotencyKey == null || idempotencyKey.equals(entry.idempotencyKey))
+                        && (requestId == null || requestId.equals(entry.requestId));
+            } else {
+                match = entry.getState() == CallJournal.State.INTERRUPTED;
+            }
+            if (match) calls.add(describe(entry));
+        }
+        JsonObject reply = new JsonObject();
+        reply.add("calls", calls);
+        return Result.success(reply.toString());
+    }
+
+    private static JsonObject describe(CallJournal.Entry entry) {
+        JsonObject call = new JsonObject();
+        call.addProperty("tool", entry.tool);
+        if (entry.requestId != null) call.add("request_id", entry.requestId);
+        if (entry.idempotencyKey != null) call.addProperty("idempotency_key", entry.idempotencyKey);
+        call.addProperty("state", entry.getState().name().toLowerCase());
+        call.addProperty("started_at", entry.startedAt);
+        JsonArray effects = new JsonArray();
+        for (String effect : entry.getEffects()) effects.add(new JsonPrimitive(effect));
+        call.add("effects", effects);
+        if (entry.getFinishedAt() != 0) {
+            call.addProperty("finished_at", entry.getFinishedAt());
+            call.addProperty("result", entry.getResult());
+        }
+        return call;
+    }
+}
@@ -0,0 +1,137 @@
+package com.google.clawminium.kernel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers recent tools/call results so a retried call is answered without running the tool
+ * again, which for the calendar tools would insert a second event and reopen the UI. A
+ * duplicate that arrives while the first call is still running waits for that call instead of
+ * starting its own. Only successful results are kept, for a fixed TTL and up to a fixed number
+ * of entries; a call that failed can be retried for real.
+ *
+ * <p>That includes calls that timed out, which is a limit: the tool may have been interrupted
+ * after its insert went through, and a retry then inserts again. Agents that need to know
+ * check get_call_status (see {@link CallJournal}) before retrying.
+ */
+public class IdempotencyCache {
+    private final long ttlNanos;
+    private final Map<String, Call> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static final class Call {
+        final CompletableFuture<KernelTool.Result> result = new CompletableFuture<>();
+        // Long.MAX_VALUE while the call is running.
+        volatile long expiresAt = Long.MAX_VALUE;
+    }
+
+    public IdempotencyCache(int maxEntries, long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, Call>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Call> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the stored or in-flight result for {@code key}, or starts {@code call} and
+     * returns its future. Only the caller that started the call gets that future; cancelling
+     * it cancels the call, and coalesced duplicates then see the cancellation too.
+     */
+    public CompletableFuture<KernelTool.Result> run(String key, Supplier<CompletableFuture<KernelTool.Result>> call) {
+        Call entry;
+        synchronized (entries) {
+            Call existing = entries.get(key);
+            if (existing != null && existing.expiresAt > System.nanoTime()) {
+                hits.incrementAndGet();
+                // A copy, so a duplicate that gets cancelled doesn't cancel the shared result.
+                return existing.result.thenApply(result -> result);
+            }
+            entry = new Call();
+            entries.put(key, entry);
+        }
+        misses.incrementAndGet();
+        CompletableFuture<KernelTool.Result> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException e) {
+            evict(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        started.whenComplete((result, failure) -> {
+            if (failure == null && !result.isError()) {
+                entry.expiresAt = System.nanoTime() + ttlNanos;
+                entry.result.complete(result);
+            } else {
+                evict(key, entry);
+                if (failure != null) {
+                    entry.result.completeExceptionally(failure);
+                } else {
+                    entry.result.complete(result);
+                }
+            }
+        });
+        return started;
+    }
+
+    private void evict(String key, Call entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * Key for a call: the client's own idempotency key if it sent one, otherwise a digest of
+     * the tool, its arguments and the request id, which an HTTP-level retry repeats verbatim.
+     * Either way the caller is part of it. Clients number requests from 0 or 1 in every session
+     * and may derive keys the same way (or just send "1"), so without it another agent's call
+     * would get this one's result and its own insert would never happen. {@code idJson} is null
+     * for a tools/call notification, and for callers whose identity other agents share (inline
+     * HTTP, known only by address); without an explicit key the result is then null, meaning
+     * "don't cache".
+     */
+    public static String keyFor(String client, String tool, String argumentsJson, String idJson, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return "key:" + client + '\0' + tool + '\0' + idempotencyKey;
+        }
+        if (idJson == null) {
+            return null;
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(String.valueOf(client).getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(tool.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(argumentsJson.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            byte[] hash = sha256.digest(idJson.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder("call:");
+            for (int i = 0; i < 16; i++) {
+                key.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,337 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming JSON-RPC codec. Requests are read with a JsonReader straight from the body bytes,
+ * keeping only the envelope (id, method) and params; replies are written with a JsonWriter
+ * into a per-thread UTF-8 buffer that is reused from one request to the next. Compared with
+ * parseBody + Gson tree parse + tree build + toJson + getBytes, no intermediate Strings or
+ * envelope trees are allocated.
+ */
+public final class JsonRpcCodec {
+    public static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int INITIAL_BUFFER_BYTES = 8 * 1024;
+    // A buffer that grew for one unusually large message isn't held on to afterwards.
+    private static final int MAX_RETAINED_BUFFER_BYTES = 64 * 1024;
+
+    private final Gson gson;
+    private final ThreadLocal<Utf8Input> inputs = ThreadLocal.withInitial(Utf8Input::new);
+    private final ThreadLocal<Encoded> outputs = ThreadLocal.withInitial(Encoded::new);
+
+    public JsonRpcCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    /** A decoded request body: one request, or the elements of a batch. */
+    public static final class Message {
+        public final boolean batch;
+        public final List<JsonRpcRequest> requests;
+
+        Message(boolean batch, List<JsonRpcRequest> requests) {
+            this.batch = batch;
+            this.requests = requests;
+        }
+    }
+
+    /** Reads exactly {@code length} body bytes from {@code in} and decodes them. */
+    public Message read(InputStream in, int length) throws IOException {
+        if (length > MAX_BODY_BYTES) {
+            throw new IOException("Request body exceeds " + MAX_BODY_BYTES + " bytes");
+        }
+        Utf8Input input = inputs.get();
+        input.fill(in, length);
+        return read(input);
+    }
+
+    public Message read(byte[] body, int offset, int length) throws IOException {
+        Utf8Input input = inputs.get();
+        input.wrap(body, offset, length);
+        return read(input);
+    }
+
+    private Message read(Utf8Input input) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        Message message;
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            List<JsonRpcRequest> requests = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                requests.add(readRequest(reader));
+            }
+            reader.endArray();
+            message = new Message(true, requests);
+        } else {
+            message = new Message(false, Collections.singletonList(readRequest(reader)));
+        }
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new MalformedJsonException("Trailing data after JSON-RPC message");
+        }
+        return message;
+    }
+
+    private JsonRpcRequest readRequest(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return JsonRpcRequest.INVALID;
+        }
+        JsonElement id = null;
+        boolean hasId = false;
+        String method = null;
+        boolean validMethod = true;
+        JsonObject params = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = JsonParser.parseReader(reader);
+                    hasId = true;
+                    break;
+                case "method":
+                    if (reader.peek() == JsonToken.STRING) {
+                        method = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                        validMethod = false;
+                    }
+                    break;
+                case "params":
+                    JsonElement value = JsonParser.parseReader(reader);
+                    if (value.isJsonObject()) params = value.getAsJsonObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new JsonRpcRequest(id, hasId, validMethod ? method : null, params);
+    }
+
+    /** Encodes one reply. The result is only valid until the next encode on this thread. */
+    public Encoded encode(JsonRpcResponse response) throws IOException {
+        Encoded out = outputs.get();
+        out.reset();
+        JsonWriter writer = new JsonWriter(out);
+        response.writeTo(writer, gson);
+        writer.flush();
+        return out;
+    }
+
+    /** Encodes a batch reply. The result is only valid until the next encode on this thread. */
+    public Encoded encode(List<JsonRpcResponse> responses) throws IOException {
+        Encoded out = outputs.get();
+        out.reset();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray();
+        for (JsonRpcResponse response : responses) {
+            response.writeTo(writer, gson);
+        }
+        writer.endArray();
+        writer.flush();
+        return out;
+    }
+
+    /** UTF-8 output buffer reused across encodes on one thread. */
+    public static final class Encoded extends Writer {
+        private byte[] buf = new byte[INITIAL_BUFFER_BYTES];
+        private int count;
+        private char highSurrogate;
+
+        void reset() {
+            if (buf.length > MAX_RETAINED_BUFFER_BYTES) buf = new byte[INITIAL_BUFFER_BYTES];
+            count = 0;
+            highSurrogate = 0;
+        }
+
+        public int length() {
+            return count;
+        }
+
+        public InputStream stream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        // The first length() bytes are the reply; valid until the next encode on this thread.
+        byte[] buffer() {
+            return buf;
+        }
+
+        @Override
+        public void write(int c) {
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) writeChar(cbuf[i]);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            for (int i = off; i < off + len; i++) writeChar(str.charAt(i));
+        }
+
+        private void writeChar(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    ensure(4);
+                    buf[count++] = (byte) (0xf0 | (cp >> 18));
+                    buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[count++] = (byte) (0x80 | (cp & 0x3f));
+                    return;
+                }
+                ensure(1);
+                buf[count++] = '?';
+            }
+            if (c < 0x80) {
+                ensure(1);
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                ensure(2);
+                buf[count++] = (byte) (0xc0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                ensure(1);
+                buf[count++] = '?';
+            } else {
+                ensure(3);
+                buf[count++] = (byte) (0xe0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        private void ensure(int n) {
+            if (count + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+            }
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+
+    /** UTF-8 decoding Reader over a per-thread body buffer; avoids InputStreamReader's buffers. */
+    private static final class Utf8Input extends Reader {
+        // Smallest code point that needs a lead byte followed by this many continuation bytes.
+        private static final int[] MIN_CODE_POINT = {0, 0x80, 0x800, 0x10000};
+
+        private byte[] buf = new byte[INITIAL_BUFFER_BYTES];
+        private byte[] data;
+        private int pos;
+        private int limit;
+        private char pendingLow;
+
+        void fill(InputStream in, int length) throws IOException {
+            if (length > buf.length || buf.length > MAX_RETAINED_BUFFER_BYTES) {
+                buf = new byte[Math.max(length, INITIAL_BUFFER_BYTES)];
+            }
+            int n = 0;
+            while (n < length) {
+                int read = in.read(buf, n, length - n);
+                if (read < 0) throw new EOFException("Request body ended after " + n + " of " + length + " bytes");
+                n += read;
+            }
+            data = buf;
+            pos = 0;
+            limit = length;
+            pendingLow = 0;
+        }
+
+        void wrap(byte[] bytes, int offset, int length) {
+            data = bytes;
+            pos = offset;
+            limit = offset + length;
+            pendingLow = 0;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (len == 0) return 0;
+            int n = 0;
+            if (pendingLow != 0) {
+                cbuf[off + n++] = pendingLow;
+                pendingLow = 0;
+            }
+            while (n < len && pos < limit) {
+                int b = data[pos++] & 0xff;
+                if (b < 0x80) {
+                    cbuf[off + n++] = (char) b;
+                    continue;
+                }
+                int cp;
+                int extra;
+                if ((b & 0xe0) == 0xc0) {
+                    cp = b & 0x1f;
+                    extra = 1;
+                } else if ((b & 0xf0) == 0xe0) {
+                    cp = b & 0x0f;
+                    extra = 2;
+                } else if ((b & 0xf8) == 0xf0) {
+                    cp = b & 0x07;
+                    extra = 3;
+                } else {
+                    cbuf[off + n++] = '\uFFFD';
+                    continue;
+                }
+                boolean malformed = false;
+                for (int i = 0; i < extra; i++) {
+                    if (pos >= limit || (data[pos] & 0xc0) != 0x80) {
+                        malformed = true;
+                        break;
+                    }
+                    cp = (cp << 6) | (data[pos++] & 0x3f);
+                }
+                // Overlong forms (C0 AF for '/'), UTF-16 surrogates and values past U+10FFFF
+                // aren't characters, however well formed the bytes are.
+                if (malformed || cp < MIN_CODE_POINT[extra] || cp > Character.MAX_CODE_POINT
+                        || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+                    cbuf[off + n++] = '\uFFFD';
+                } else if (cp >= 0x10000) {
+                    cbuf[off + n++] = Character.highSurrogate(cp);
+                    if (n < len) {
+                        cbuf[off + n++] = Character.lowSurrogate(cp);
+                    } else {
+                        pendingLow = Character.lowSurrogate(cp);
+                    }
+                } else {
+                    cbuf[off + n++] = (char) cp;
+                }
+            }
+            return n == 0 ? -1 : n;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
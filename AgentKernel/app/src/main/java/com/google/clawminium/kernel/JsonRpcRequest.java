@@ -0,0 +1,44 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/** The parts of a JSON-RPC request envelope the kernel acts on. */
+public final class JsonRpcRequest {
+    // Stands in for a batch element that isn't a request object.
+    static final JsonRpcRequest INVALID = new JsonRpcRequest(null, false, null, null);
+
+    private final JsonElement id;
+    private final boolean hasId;
+    private final String method;
+    private final JsonObject params;
+
+    JsonRpcRequest(JsonElement id, boolean hasId, String method, JsonObject params) {
+        this.id = id;
+        this.hasId = hasId;
+        this.method = method;
+        this.params = params;
+    }
+
+    /** The request id exactly as sent, or null when there was none. */
+    public JsonElement getId() {
+        return id;
+    }
+
+    public boolean isNotification() {
+        return !hasId;
+    }
+
+    public boolean isValid() {
+        return method != null;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /** The params object, or an empty object when absent. */
+    public JsonObject getParams() {
+        return params != null ? params : new JsonObject();
+    }
+}
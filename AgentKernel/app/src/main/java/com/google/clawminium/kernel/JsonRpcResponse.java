@@ -0,0 +1,95 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+/**
+ * A JSON-RPC reply that streams itself into a JsonWriter, so no response tree is built.
+ * Tool results are written straight from their text; other results from a (usually shared
+ * and cached) JsonElement, or from JSON serialized once up front.
+ */
+public final class JsonRpcResponse {
+    private final JsonElement id;
+    private final JsonElement result;
+    private final String resultJson;
+    private final String text;
+    private final int errorCode;
+    private final String errorMessage;
+    private final JsonElement errorData;
+
+    private JsonRpcResponse(JsonElement id, JsonElement result, String resultJson, String text, int errorCode, String errorMessage, JsonElement errorData) {
+        this.id = id;
+        this.result = result;
+        this.resultJson = resultJson;
+        this.text = text;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+        this.errorData = errorData;
+    }
+
+    public static JsonRpcResponse result(JsonElement id, JsonElement result) {
+        return new JsonRpcResponse(id, result, null, null, 0, null, null);
+    }
+
+    /** A result that is already serialized; {@code resultJson} is copied into the reply as is. */
+    public static JsonRpcResponse rawResult(JsonElement id, String resultJson) {
+        return new JsonRpcResponse(id, null, resultJson, null, 0, null, null);
+    }
+
+    /** An MCP tool result with a single text content block. */
+    public static JsonRpcResponse text(JsonElement id, String text) {
+        return new JsonRpcResponse(id, null, null, text, 0, null, null);
+    }
+
+    public static JsonRpcResponse error(JsonElement id, int code, String message) {
+        return new JsonRpcResponse(id, null, null, null, code, message, null);
+    }
+
+    public static JsonRpcResponse error(JsonElement id, int code, String message, JsonElement data) {
+        return new JsonRpcResponse(id, null, null, null, code, message, data);
+    }
+
+    public boolean isError() {
+        return errorMessage != null;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    void writeTo(JsonWriter out, Gson gson) throws IOException {
+        out.beginObject();
+        out.name("jsonrpc").value("2.0");
+        out.name("id");
+        // Written by hand: Gson without serializeNulls drops a JsonNull and its name with it.
+        if (id == null || id.isJsonNull()) {
+            out.nullValue();
+        } else {
+            gson.toJson(id, out);
+        }
+        if (errorMessage != null) {
+            out.name("error").beginObject();
+            out.name("code").value(errorCode);
+            out.name("message").value(errorMessage);
+            if (errorData != null) {
+                out.name("data");
+                gson.toJson(errorData, out);
+            }
+            out.endObject();
+        } else if (text != null) {
+            out.name("result").beginObject();
+            out.name("content").beginArray();
+            out.beginObject().name("type").value("text").name("text").value(text).endObject();
+            out.endArray();
+            out.endObject();
+        } else if (resultJson != null) {
+            out.name("result").jsonValue(resultJson);
+        } else {
+            out.name("result");
+            gson.toJson(result, out);
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,29 @@
+package com.google.clawminium.kernel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Thread pools used by the kernel. All are bounded and let idle threads die off. */
+final class KernelExecutors {
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private KernelExecutors() {}
+
+    static ThreadPoolExecutor newBoundedPool(String name, int threads, int queueDepth, RejectedExecutionHandler rejection) {
+        BlockingQueue<Runnable> queue = queueDepth > 0 ? new ArrayBlockingQueue<>(queueDepth) : new SynchronousQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS, queue, r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, rejection);
+        // Let an idle kernel shed its threads entirely.
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
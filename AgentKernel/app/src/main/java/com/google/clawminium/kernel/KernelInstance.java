@@ -0,0 +1,77 @@
+package com.google.clawminium.kernel;
+
+/**
+ * One kernel per Android user or profile: where it listens and what it may use. Each user's
+ * kernel gets its own TCP port and local socket name, derived from the user id, so kernels in
+ * several profiles run side by side; user 0 keeps the original 8080 and socket name.
+ *
+ * <p>Pools and queues are budgeted per instance. CPU-bound pools get this instance's share of
+ * the cores, split between the profiles running a kernel. Threads that hold a request body
+ * (each has a codec buffer of up to {@link JsonRpcCodec#MAX_BODY_BYTES}) and the bytes of
+ * request bodies in flight are sized from the heap limit.
+ */
+public final class KernelInstance {
+    public static final int BASE_PORT = 8080;
+    public static final String BASE_SOCKET_NAME = "clawminium-kernel";
+    // UserHandle.PER_USER_RANGE, which isn't in the public SDK: user N's uids are N * 100000 + appId.
+    private static final int PER_USER_RANGE = 100000;
+    // Share of the heap that request bodies, in flight or in thread buffers, may take.
+    private static final int HEAP_SHARE_FOR_REQUESTS = 16;
+    private static final int MAX_REQUEST_BYTES = 16 << 20;
+
+    public final int userId;
+    public final int port;
+    public final String localSocketName;
+    public final int rpcThreads;
+    public final int rpcQueueDepth;
+    public final int sseThreads;
+    public final int dispatchThreads;
+    public final int dispatchQueueDepth;
+    public final int toolIoThreads;
+    public final int toolCpuThreads;
+    public final int localConnections;
+    // Bytes of POST /rpc bodies being handled at once; past that, requests get a 503.
+    public final int requestBytes;
+
+    private KernelInstance(int userId, int profiles, int processors, long maxMemory) {
+        this.userId = userId;
+        this.port = BASE_PORT + userId;
+        this.localSocketName = userId == 0 ? BASE_SOCKET_NAME : BASE_SOCKET_NAME + "-" + userId;
+
+        int cores = Math.max(1, processors / Math.max(1, profiles));
+        this.dispatchThreads = clamp(cores, 2, 4);
+        this.dispatchQueueDepth = dispatchThreads * 16;
+        this.toolCpuThreads = clamp(cores / 2, 1, 2);
+        // Binder and disk waits, not CPU; still halved when another profile runs a kernel.
+        this.toolIoThreads = profiles > 1 ? 2 : 4;
+
+        this.requestBytes = (int) Math.max(JsonRpcCodec.MAX_BODY_BYTES, Math.min(MAX_REQUEST_BYTES, maxMemory / HEAP_SHARE_FOR_REQUESTS));
+        int bodyThreads = requestBytes / JsonRpcCodec.MAX_BODY_BYTES;
+        this.rpcThreads = clamp(bodyThreads, 2, 8);
+        this.rpcQueueDepth = rpcThreads * 4;
+        this.localConnections = clamp(bodyThreads, 2, 8);
+        // SSE threads only wait on their stream.
+        this.sseThreads = 8;
+    }
+
+    /**
+     * {@code profiles} is how many users or profiles may be running a kernel alongside this
+     * one, counting it; {@code maxMemory} is this process's heap limit.
+     */
+    public static KernelInstance forUid(int uid, int profiles, int processors, long maxMemory) {
+        return new KernelInstance(uid / PER_USER_RANGE, profiles, processors, maxMemory);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return "user=" + userId + " port=" + port + " socket=@" + localSocketName
+                + " rpc=" + rpcThreads + "/" + rpcQueueDepth + " sse=" + sseThreads
+                + " dispatch=" + dispatchThreads + "/" + dispatchQueueDepth
+                + " tools=" + toolIoThreads + "io+" + toolCpuThreads + "cpu"
+                + " local=" + localConnections + " request_bytes=" + requestBytes;
+    }
+}
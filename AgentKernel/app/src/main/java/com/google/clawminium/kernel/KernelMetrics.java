@@ -0,0 +1,120 @@
+package com.google.clawminium.kernel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process metrics for the kernel, rendered in the Prometheus text format for
+ * {@code GET /metrics}. Calls and errors are LongAdders and latencies go into a
+ * {@link LatencyHistogram} per JSON-RPC method and per tool, so recording never takes a lock;
+ * gauges are read from their owners only when scraped.
+ */
+public class KernelMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Series> methods = new ConcurrentSkipListMap<>();
+    private final Map<String, Series> tools = new ConcurrentSkipListMap<>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    /** Latency, call and error counts for one method or tool. */
+    public static final class Series {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        public void record(long elapsedNanos, boolean error) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+            if (error) errors.increment();
+        }
+    }
+
+    private static final class Gauge {
+        final String name;
+        final String help;
+        final String type;
+        final LongSupplier value;
+
+        Gauge(String name, String help, String type, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    // Callers only pass names that are registered methods or tools, which bounds the label set.
+    public Series method(String name) {
+        return methods.computeIfAbsent(name, k -> new Series());
+    }
+
+    public Series tool(String name) {
+        return tools.computeIfAbsent(name, k -> new Series());
+    }
+
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, "gauge", value));
+    }
+
+    /** A monotonically increasing count kept by some other component. */
+    public void counter(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, "counter", value));
+    }
+
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        renderSeries(out, "kernel_rpc", "method", "JSON-RPC call latency by method.", "JSON-RPC calls answered with an error.", methods);
+        renderSeries(out, "kernel_tool", "tool", "Tool execution latency by tool.", "Tool calls that failed or returned an error.", tools);
+        for (Gauge gauge : gauges) {
+            header(out, gauge.name, gauge.help, gauge.type);
+            out.append(gauge.name).append(' ').append(gauge.value.getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void renderSeries(StringBuilder out, String prefix, String label,
+                                     String latencyHelp, String errorHelp, Map<String, Series> series) {
+        String duration = prefix + "_duration_seconds";
+        header(out, duration, latencyHelp, "summary");
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            for (double q : QUANTILES) {
+                sample(out, duration, label, entry.getKey(), ",quantile=\"" + q + "\"", seconds(latency.getQuantileMicros(q)));
+            }
+            sample(out, duration + "_sum", label, entry.getKey(), "", seconds(latency.getSumMicros()));
+            sample(out, duration + "_count", label, entry.getKey(), "", Long.toString(latency.getCount()));
+        }
+        String errors = prefix + "_errors_total";
+        header(out, errors, errorHelp, "counter");
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            sample(out, errors, label, entry.getKey(), "", Long.toString(entry.getValue().errors.sum()));
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String value, String extraLabels, String sample) {
+        out.append(name).append('{').append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"').append(extraLabels).append("} ").append(sample).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1e6);
+    }
+}
@@ -0,0 +1,708 @@
+package com.google.clawminium.kernel;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import fi.iki.elonen.NanoHTTPD;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MCP endpoint: HTTP routing, SSE sessions and JSON-RPC dispatch. Tools are registered
+ * by the owner through {@link #getTools()}. Apart from android.util.Log nothing here touches
+ * Android, so the server also runs on a plain JVM (see the benchmark module).
+ */
+public class KernelServer extends NanoHTTPD {
+    private static final String TAG = "AgentKernel";
+    private static final String PROTOCOL_VERSION = "2025-11-25";
+    private static final int MAX_BATCH_SIZE = 64;
+    // Long enough to cover an agent's retries after a dropped bridge connection.
+    private static final int IDEMPOTENCY_MAX_ENTRIES = 256;
+    private static final long IDEMPOTENCY_TTL_MINUTES = 10;
+    // How long tools/list and tools/call wait for the owner to finish registering tools
+    // when they arrive while the kernel is still starting.
+    private static final long TOOLS_READY_TIMEOUT_SECONDS = 10;
+    private static final byte[] ACCEPTED = "Accepted".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_JSON = "{}".getBytes(StandardCharsets.UTF_8);
+    // Returned by dispatch when the reply will be sent to the peer later.
+    private static final JsonRpcCodec.Encoded ASYNC = new JsonRpcCodec.Encoded();
+    // The ARC container's address as seen from the ChromeOS Linux VM, for clients that send no Host.
+    private static final String FALLBACK_HOST = "100.115.92.2";
+    private static final int BUSY_RETRY_AFTER_SECONDS = 1;
+
+    // JSON-RPC "request cancelled" (as in LSP); MCP itself says cancelled calls get no reply.
+    private static final int REQUEST_CANCELLED = -32800;
+    // Implementation-defined server error for a client over its rate limit (cf. HTTP 429).
+    private static final int RATE_LIMITED = -32029;
+
+    private interface RpcMethod {
+        // peer is the SSE session or local connection the request came over, or null for
+        // inline HTTP requests; client is who the request is accounted to.
+        JsonRpcResponse handle(JsonRpcRequest request, RpcPeer peer, String client);
+    }
+
+    private final BoundedAsyncRunner runner;
+    private final SseSessionRegistry sseSessions;
+    private final ThreadPoolExecutor dispatchPool;
+    private final ToolExecutor toolExecutor;
+    private final RateLimiter rateLimiter;
+    private final KernelInstance instance;
+    private final Semaphore requestBytes;
+    private final LongAdder requestBytesRejected = new LongAdder();
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private final JsonRpcCodec codec = new JsonRpcCodec(gson);
+    private final ToolRegistry tools = new ToolRegistry(gson, this::notifyToolsChanged);
+    // Serialized once; JsonElement.toString doesn't need a Gson instance.
+    private final String initializeResult = buildInitializeResult().toString();
+    private final CountDownLatch toolsReady = new CountDownLatch(1);
+    private final StartupTrace startup;
+    private final Map<String, RpcMethod> methods = new HashMap<>();
+    private final KernelMetrics metrics = new KernelMetrics();
+    // In-flight tools/call futures by peer (or inline client) and request id, for notifications/cancelled.
+    private final Map<String, CompletableFuture<KernelTool.Result>> inFlight = new ConcurrentHashMap<>();
+    private final IdempotencyCache idempotency = new IdempotencyCache(IDEMPOTENCY_MAX_ENTRIES, IDEMPOTENCY_TTL_MINUTES, TimeUnit.MINUTES);
+    private volatile CallJournal journal;
+
+    /** {@code port} may differ from the instance's own when that is taken; 0 picks a free one. */
+    public KernelServer(int port, KernelInstance instance, BoundedAsyncRunner runner, SseSessionRegistry sseSessions,
+                        ThreadPoolExecutor dispatchPool, ToolExecutor toolExecutor, RateLimiter rateLimiter, StartupTrace startup) {
+        super(port);
+        this.instance = instance;
+        this.requestBytes = new Semaphore(instance.requestBytes);
+        this.runner = runner;
+        this.sseSessions = sseSessions;
+        this.dispatchPool = dispatchPool;
+        this.toolExecutor = toolExecutor;
+        this.rateLimiter = rateLimiter;
+        this.startup = startup;
+        setAsyncRunner(runner);
+        methods.put("initialize", this::initialize);
+        methods.put("tools/list", this::listTools);
+        methods.put("tools/call", this::callTool);
+        methods.put("notifications/cancelled", this::cancelRequest);
+        metrics.gauge("kernel_sse_sessions", "Open SSE sessions.", sseSessions::size);
+        metrics.gauge("kernel_sse_streams_active", "Threads currently streaming SSE responses.", runner::getActiveStreams);
+        metrics.gauge("kernel_rpc_queue_depth", "Connections waiting for an rpc thread.", runner::getRpcQueueDepth);
+        metrics.gauge("kernel_dispatch_queue_depth", "Batch calls waiting for a dispatch thread.", () -> dispatchPool.getQueue().size());
+        metrics.counter("kernel_idempotency_hits_total", "tools/call retries answered from the idempotency cache.", idempotency::getHits);
+        metrics.counter("kernel_idempotency_misses_total", "tools/call executions recorded in the idempotency cache.", idempotency::getMisses);
+        metrics.counter("kernel_rejected_connections_total", "Connections answered with 503 because the pools were full.", runner::getRejectedCount);
+        metrics.counter("kernel_rate_limited_total", "Requests refused because the client was over its rate limit.", rateLimiter::getThrottled);
+        metrics.gauge("kernel_rate_limited_clients", "Clients with a rate-limit bucket.", rateLimiter::getClients);
+        metrics.gauge("kernel_tool_queue_depth", "Tool calls waiting for an IO or CPU thread.", toolExecutor::getQueued);
+        metrics.gauge("kernel_request_bytes_in_flight", "Bytes of RPC request bodies being handled.", () -> instance.requestBytes - requestBytes.availablePermits());
+        metrics.counter("kernel_request_bytes_rejected_total", "Requests answered with 503 because the request memory budget was spent.", requestBytesRejected::sum);
+        startup.register(metrics);
+    }
+
+    public ToolRegistry getTools() {
+        return tools;
+    }
+
+    public KernelMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Called by the owner once its tools are registered. The server may be started before
+     * that so clients can connect early; until then initialize is answered right away and
+     * tools/list and tools/call wait.
+     */
+    public void markToolsReady() {
+        toolsReady.countDown();
+    }
+
+    /** Journals calls to tools with side effects from now on; set it before markToolsReady(). */
+    public void setCallJournal(CallJournal journal) {
+        this.journal = journal;
+    }
+
+    private void awaitToolsReady() {
+        try {
+            if (!toolsReady.await(TOOLS_READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Tools still not registered after " + TOOLS_READY_TIMEOUT_SECONDS + " s; serving what there is");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        try {
+            // NanoHTTPD writes headers and body separately; with Nagle on, a keep-alive
+            // client's next request waits out the peer's delayed ACK (~40 ms) on every call.
+            finalAccept.setTcpNoDelay(true);
+        } catch (SocketException e) {
+            Log.w(TAG, "Could not disable Nagle on client socket: " + e.getMessage());
+        }
+        return new BoundedAsyncRunner.Connection(this, inputStream, finalAccept);
+    }
+
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        // Compression is decided per reply in bytesResponse. NanoHTTPD's would gzip every text
+        // reply, tiny ones included, and hold SSE frames back until its buffer fills.
+        return false;
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        Response response = route(session);
+        return runner.canKeepAlive() ? response : closing(response);
+    }
+
+    private Response route(IHTTPSession session) {
+        String uri = session.getUri();
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "HTTP Request: " + session.getMethod() + " " + uri);
+        }
+
+        if ("/metrics".equals(uri) && Method.GET.equals(session.getMethod())) {
+            byte[] text = metrics.render().getBytes(StandardCharsets.UTF_8);
+            return bytesResponse(session, Response.Status.OK, "text/plain; version=0.0.4; charset=utf-8", text, text.length);
+        }
+
+        if ("/discovery".equals(uri) && Method.GET.equals(session.getMethod())) {
+            byte[] json = discovery(session).toString().getBytes(StandardCharsets.UTF_8);
+            return bytesResponse(session, Response.Status.OK, "application/json", json, json.length);
+        }
+
+        if ("/sse".equals(uri) && Method.GET.equals(session.getMethod())) {
+            SseSession sse = sseSessions.open();
+            sse.sendEvent("endpoint", rpcUrl(session, sse.getId()));
+            Response response = newChunkedResponse(Response.Status.OK, "text/event-stream", sse.stream());
+            response.addHeader("Cache-Control", "no-cache");
+            response.addHeader("Connection", "keep-alive");
+            return response;
+        }
+
+        if (("/rpc".equals(uri) || "/sse".equals(uri)) && Method.POST.equals(session.getMethod())) {
+            Response response = serveRpc(session);
+            startup.mark(StartupTrace.Phase.FIRST_RPC);
+            return response;
+        }
+        Response notFound = newFixedLengthResponse(Response.Status.NOT_FOUND, "text/plain", "Not Found");
+        return contentLength(session) != 0 ? closing(notFound) : notFound;
+    }
+
+    private Response serveRpc(IHTTPSession session) {
+        // Clients that connected through GET /sse post with their session id and
+        // read replies from the stream; everyone else gets the reply inline.
+        // Every path below either consumes exactly Content-Length body bytes or closes the
+        // connection, so the next request on a kept-alive connection starts where it should.
+        int length = contentLength(session);
+        if (length < 0) {
+            return closing(newFixedLengthResponse(Response.Status.LENGTH_REQUIRED, "text/plain", "Content-Length required"));
+        }
+        if (length > JsonRpcCodec.MAX_BODY_BYTES) {
+            return closing(newFixedLengthResponse(Response.Status.PAYLOAD_TOO_LARGE, "text/plain", "Request body too large"));
+        }
+        SseSession sse = null;
+        List<String> sessionIds = session.getParameters().get("sessionId");
+        if (sessionIds != null && !sessionIds.isEmpty()) {
+            sse = sseSessions.get(sessionIds.get(0));
+            if (sse == null) {
+                return discardBody(session, length, newFixedLengthResponse(Response.Status.NOT_FOUND, "text/plain", "Session not found"));
+            }
+        }
+        if (!requestBytes.tryAcquire(length)) {
+            requestBytesRejected.increment();
+            Response busy = newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "application/json",
+                    "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32000,\"message\":\"Server busy, retry later\"}}");
+            busy.addHeader("Retry-After", Integer.toString(BUSY_RETRY_AFTER_SECONDS));
+            return discardBody(session, length, busy);
+        }
+        try {
+            JsonRpcCodec.Message message;
+            try {
+                // The body is decoded straight off the connection; parseBody is skipped.
+                message = codec.read(session.getInputStream(), length);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Unparseable RPC body: " + e.getMessage());
+                return jsonResponse(session, codec.encode(JsonRpcResponse.error(null, -32700, "Parse error")));
+            }
+
+            String client = sse != null ? sse.getId() : session.getRemoteIpAddress();
+            // Buckets go by address rather than session: one per session would hand a client
+            // that opens a new /sse for every burst a full bucket each time.
+            long retryAfterMillis = rateLimiter.acquire(session.getRemoteIpAddress(), costOf(message.requests));
+            if (retryAfterMillis == 0 && sse == null && !message.batch && "tools/list".equals(message.requests.get(0).getMethod())) {
+                long start = System.nanoTime();
+                Response response = serveToolsList(session, message.requests.get(0));
+                metrics.method("tools/list").record(System.nanoTime() - start, false);
+                return response;
+            }
+            JsonRpcCodec.Encoded reply = dispatch(message, sse, client, retryAfterMillis);
+            if (sse != null) {
+                if (reply != null && reply != ASYNC && !sse.send(new String(reply.toByteArray(), StandardCharsets.UTF_8))) {
+                    return newFixedLengthResponse(Response.Status.GONE, "text/plain", "Session closed");
+                }
+                return bytesResponse(session, Response.Status.ACCEPTED, "text/plain", ACCEPTED, ACCEPTED.length);
+            }
+            if (reply == null) {
+                return bytesResponse(session, Response.Status.OK, "application/json", EMPTY_JSON, EMPTY_JSON.length);
+            }
+            return jsonResponse(session, reply);
+        } catch (Exception e) {
+            Log.e(TAG, "RPC Error", e);
+            // The body may be partly read; don't parse the rest as the next request.
+            JsonObject error = new JsonObject();
+            error.addProperty("error", String.valueOf(e.getMessage()));
+            return closing(newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error)));
+        } finally {
+            requestBytes.release(length);
+        }
+    }
+
+    // Where this instance can be reached, as the client addressed it. Behind a port forward
+    // (adb reverse, the ARC bridge) the Host header is the only address that works.
+    private String advertisedHost(IHTTPSession session) {
+        String host = session.getHeaders().get("host");
+        return host != null ? host : FALLBACK_HOST + ":" + getListeningPort();
+    }
+
+    private String rpcUrl(IHTTPSession session, String sessionId) {
+        String url = "http://" + advertisedHost(session) + "/rpc";
+        return sessionId != null ? url + "?sessionId=" + sessionId : url;
+    }
+
+    /**
+     * GET /discovery: which kernel this is and how to reach it. With several users or
+     * profiles each running a kernel, an agent checks here that it found the right one. With
+     * ?sessionId= naming an open SSE session, "rpc" is the URL that session posts to.
+     */
+    private JsonObject discovery(IHTTPSession session) {
+        List<String> sessionIds = session.getParameters().get("sessionId");
+        String sessionId = sessionIds != null && !sessionIds.isEmpty() && sseSessions.get(sessionIds.get(0)) != null ? sessionIds.get(0) : null;
+        JsonObject info = new JsonObject();
+        info.addProperty("user", instance.userId);
+        info.addProperty("port", getListeningPort());
+        info.addProperty("protocolVersion", PROTOCOL_VERSION);
+        info.addProperty("sse", "http://" + advertisedHost(session) + "/sse");
+        info.addProperty("rpc", rpcUrl(session, sessionId));
+        if (sessionId != null) info.addProperty("sessionId", sessionId);
+        info.addProperty("localSocket", "@" + instance.localSocketName);
+        return info;
+    }
+
+    // Rate-limit tokens for a message: a tool's own cost for tools/call, 1 for other requests,
+    // nothing for notifications, so notifications/cancelled always gets through.
+    private int costOf(List<JsonRpcRequest> requests) {
+        int cost = 0;
+        for (JsonRpcRequest request : requests) {
+            if (request.isNotification()) continue;
+            KernelTool tool = null;
+            if ("tools/call".equals(request.getMethod()) && request.getParams().has("name")) {
+                JsonElement name = request.getParams().get("name");
+                if (name.isJsonPrimitive()) tool = tools.get(name.getAsString());
+            }
+            cost += tool != null ? tool.getCost() : 1;
+        }
+        return cost;
+    }
+
+    // Every request in the message is refused; error.data.retryAfterMs says when to retry.
+    private JsonRpcCodec.Encoded encodeRateLimited(JsonRpcCodec.Message message, long retryAfterMillis) throws IOException {
+        JsonObject data = new JsonObject();
+        data.addProperty("retryAfterMs", retryAfterMillis);
+        return encodeErrors(message, RATE_LIMITED, "Rate limit exceeded; retry in " + retryAfterMillis + " ms", data);
+    }
+
+    // The same error for every request in the message that expects a reply.
+    private JsonRpcCodec.Encoded encodeErrors(JsonRpcCodec.Message message, int code, String text, JsonElement data) throws IOException {
+        List<JsonRpcResponse> replies = new ArrayList<>(message.requests.size());
+        for (JsonRpcRequest request : message.requests) {
+            if (!request.isNotification()) {
+                replies.add(JsonRpcResponse.error(request.getId(), code, text, data));
+            }
+        }
+        if (replies.isEmpty()) return null;
+        return message.batch ? codec.encode(replies) : codec.encode(replies.get(0));
+    }
+
+    /**
+     * Handles one JSON-RPC message that arrived over a connection other than HTTP, such as
+     * {@link LineRpcConnection}. Returns the encoded reply, valid until the next encode on this
+     * thread, or null when there is nothing to send back right away: notifications, and
+     * tools/call, whose reply is sent to {@code peer} when the tool finishes.
+     */
+    public JsonRpcCodec.Encoded handleMessage(byte[] body, int offset, int length, RpcPeer peer, String client) throws IOException {
+        JsonRpcCodec.Message message;
+        try {
+            message = codec.read(body, offset, length);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unparseable RPC message: " + e.getMessage());
+            return codec.encode(JsonRpcResponse.error(null, -32700, "Parse error"));
+        }
+        long retryAfterMillis = rateLimiter.acquire(client, costOf(message.requests));
+        JsonRpcCodec.Encoded reply;
+        try {
+            reply = dispatch(message, peer, client, retryAfterMillis);
+        } catch (RuntimeException e) {
+            // These connections run on threads of their own; a bug in one handler must cost
+            // the request, not the thread or (on Android) the process.
+            Log.e(TAG, "RPC Error", e);
+            reply = encodeErrors(message, -32603, "Internal error: " + e.getMessage(), null);
+        }
+        startup.mark(StartupTrace.Phase.FIRST_RPC);
+        return reply == ASYNC ? null : reply;
+    }
+
+    // Shared by every transport once the message is decoded. With a peer, a lone tools/call
+    // is started asynchronously and ASYNC returned; its reply goes to the peer later, so the
+    // connection is free as soon as the call has been handed off.
+    private JsonRpcCodec.Encoded dispatch(JsonRpcCodec.Message message, RpcPeer peer, String client, long retryAfterMillis) throws IOException {
+        JsonRpcRequest first = message.requests.isEmpty() ? null : message.requests.get(0);
+        if (retryAfterMillis > 0) {
+            return encodeRateLimited(message, retryAfterMillis);
+        }
+        if (peer != null && !message.batch && first.isValid() && !first.isNotification() && "tools/call".equals(first.getMethod())) {
+            startAsyncToolCall(first, peer, client);
+            return ASYNC;
+        }
+        if (message.batch && (message.requests.isEmpty() || message.requests.size() > MAX_BATCH_SIZE)) {
+            String error = message.requests.isEmpty() ? "Invalid Request: empty batch" : "Invalid Request: batch exceeds " + MAX_BATCH_SIZE + " calls";
+            return codec.encode(JsonRpcResponse.error(null, -32600, error));
+        }
+        if (message.batch) {
+            List<JsonRpcResponse> replies = handleBatch(message.requests, peer, client);
+            return replies.isEmpty() ? null : codec.encode(replies);
+        }
+        JsonRpcResponse single = handleRpc(first, peer, client);
+        return single != null ? codec.encode(single) : null;
+    }
+
+    // -1 when a POST has no usable Content-Length (e.g. a chunked upload).
+    private int contentLength(IHTTPSession session) {
+        String header = session.getHeaders().get("content-length");
+        if (header == null) {
+            return Method.POST.equals(session.getMethod()) ? -1 : 0;
+        }
+        try {
+            return Integer.parseInt(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Response closing(Response response) {
+        response.closeConnection(true);
+        return response;
+    }
+
+    private static Response discardBody(IHTTPSession session, int length, Response response) {
+        try {
+            InputStream in = session.getInputStream();
+            long remaining = length;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) break;
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            return response;
+        } catch (IOException e) {
+            return closing(response);
+        }
+    }
+
+    // The encoded reply lives in a per-thread buffer; NanoHTTPD sends it on this thread
+    // before the next request can reuse it.
+    private Response jsonResponse(IHTTPSession session, JsonRpcCodec.Encoded body) {
+        return bytesResponse(session, Response.Status.OK, "application/json", body.buffer(), body.length());
+    }
+
+    // Replies always carry a Content-Length so the connection can be reused. Bodies of
+    // GzipEncoder.MIN_BYTES or more are gzipped for clients that accept it.
+    private Response bytesResponse(IHTTPSession session, Response.Status status, String mimeType, byte[] body, int length) {
+        String acceptEncoding = session.getHeaders().get("accept-encoding");
+        if (length >= GzipEncoder.MIN_BYTES && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            GzipEncoder gzip = GzipEncoder.get().encode(body, 0, length);
+            Response response = newFixedLengthResponse(status, mimeType, gzip.stream(), gzip.length());
+            response.addHeader("Content-Encoding", "gzip");
+            response.addHeader("Vary", "Accept-Encoding");
+            return response;
+        }
+        return newFixedLengthResponse(status, mimeType, new ByteArrayInputStream(body, 0, length), length);
+    }
+
+    // Serves the pre-serialized catalogue; clients that send back the ETag they last saw
+    // get 304 and can keep their cached copy.
+    private Response serveToolsList(IHTTPSession session, JsonRpcRequest request) {
+        awaitToolsReady();
+        ToolRegistry.Catalog catalog = tools.catalog();
+        Response response;
+        if (catalog.etag.equals(session.getHeaders().get("if-none-match"))) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, "application/json", "");
+        } else {
+            byte[] body = catalog.toResponse(request.getId());
+            response = bytesResponse(session, Response.Status.OK, "application/json", body, body.length);
+        }
+        response.addHeader("ETag", catalog.etag);
+        return response;
+    }
+
+    private void notifyToolsChanged() {
+        sseSessions.broadcast("message", "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/tools/list_changed\"}");
+    }
+
+    // JSON-RPC 2.0 batch: calls run concurrently on the dispatch pool and the replies are
+    // collected in request order. Notifications contribute nothing; an all-notification
+    // batch yields an empty list.
+    private List<JsonRpcResponse> handleBatch(List<JsonRpcRequest> batch, RpcPeer peer, String client) {
+        List<Future<JsonRpcResponse>> pending = new ArrayList<>(batch.size());
+        for (JsonRpcRequest request : batch) {
+            if (!request.isValid()) {
+                pending.add(CompletableFuture.completedFuture(handleRpc(request, peer, client)));
+                continue;
+            }
+            pending.add(dispatchPool.submit(() -> {
+                try {
+                    return handleRpc(request, peer, client);
+                } catch (Exception e) {
+                    Log.e(TAG, "RPC Error in batch", e);
+                    return request.isNotification() ? null : JsonRpcResponse.error(request.getId(), -32603, "Internal error: " + e.getMessage());
+                }
+            }));
+        }
+        List<JsonRpcResponse> replies = new ArrayList<>(batch.size());
+        for (Future<JsonRpcResponse> future : pending) {
+            try {
+                JsonRpcResponse reply = future.get();
+                if (reply != null) replies.add(reply);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "RPC Error in batch", e.getCause());
+            }
+        }
+        return replies;
+    }
+
+    // Returns the JSON-RPC reply, or null for notifications.
+    private JsonRpcResponse handleRpc(JsonRpcRequest request, RpcPeer peer, String client) {
+        if (!request.isValid()) {
+            return JsonRpcResponse.error(request.getId(), -32600, "Invalid Request");
+        }
+        RpcMethod handler = methods.get(request.getMethod());
+        if (handler == null) {
+            return request.isNotification() ? null : JsonRpcResponse.error(request.getId(), -32601, "Method not found: " + request.getMethod());
+        }
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            // Opt-in only (setprop log.tag.AgentKernel VERBOSE): params carry user data.
+            Log.v(TAG, "RPC " + request.getMethod() + " id=" + request.getId() + " params=" + request.getParams());
+        }
+        long start = System.nanoTime();
+        JsonRpcResponse reply = null;
+        boolean failed = true;
+        try {
+            reply = handler.handle(request, peer, client);
+            failed = reply != null && reply.isError();
+        } finally {
+            metrics.method(request.getMethod()).record(System.nanoTime() - start, failed);
+        }
+        return request.isNotification() ? null : reply;
+    }
+
+    private JsonObject buildInitializeResult() {
+        JsonObject result = new JsonObject();
+        result.addProperty("protocolVersion", PROTOCOL_VERSION);
+        JsonObject capabilities = new JsonObject();
+        JsonObject toolsCapability = new JsonObject();
+        toolsCapability.addProperty("listChanged", true);
+        capabilities.add("tools", toolsCapability);
+        result.add("capabilities", capabilities);
+        JsonObject serverInfo = new JsonObject();
+        serverInfo.addProperty("name", "clawminium-kernel");
+        serverInfo.addProperty("version", "1.0.0");
+        result.add("serverInfo", serverInfo);
+        return result;
+    }
+
+    private JsonRpcResponse initialize(JsonRpcRequest request, RpcPeer peer, String client) {
+        return JsonRpcResponse.rawResult(request.getId(), initializeResult);
+    }
+
+    private JsonRpcResponse listTools(JsonRpcRequest request, RpcPeer peer, String client) {
+        awaitToolsReady();
+        return JsonRpcResponse.result(request.getId(), tools.catalog().result);
+    }
+
+    private JsonRpcResponse callTool(JsonRpcRequest request, RpcPeer peer, String client) {
+        try {
+            JsonRpcResponse reply = startToolCall(request, peer, client).get();
+            return reply != null ? reply : JsonRpcResponse.error(request.getId(), REQUEST_CANCELLED, "Request cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return JsonRpcResponse.error(request.getId(), -32603, "Interrupted");
+        } catch (ExecutionException e) {
+            return JsonRpcResponse.error(request.getId(), -32603, "Internal error: " + e.getCause());
+        }
+    }
+
+    private void startAsyncToolCall(JsonRpcRequest request, RpcPeer peer, String client) {
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, "RPC tools/call (async) id=" + request.getId() + " params=" + request.getParams());
+        }
+        long start = System.nanoTime();
+        startToolCall(request, peer, client).whenComplete((reply, failure) -> {
+            metrics.method("tools/call").record(System.nanoTime() - start, reply == null || reply.isError());
+            if (reply != null) {
+                sendToPeer(peer, reply);
+            }
+        });
+    }
+
+    // Hands the call to the tool executor. The future completes with the reply, or with null
+    // when the call was cancelled through notifications/cancelled.
+    private CompletableFuture<JsonRpcResponse> startToolCall(JsonRpcRequest request, RpcPeer peer, String client) {
+        JsonObject params = request.getParams();
+        JsonElement name = params.get("name");
+        if (name == null || !name.isJsonPrimitive() || !name.getAsJsonPrimitive().isString()) {
+            return CompletableFuture.completedFuture(JsonRpcResponse.error(request.getId(), -32602, "Invalid params: 'name' must be a string"));
+        }
+        JsonElement arguments = params.get("arguments");
+        if (arguments != null && !arguments.isJsonNull() && !arguments.isJsonObject()) {
+            return CompletableFuture.completedFuture(JsonRpcResponse.error(request.getId(), -32602, "Invalid params: 'arguments' must be an object"));
+        }
+        String toolName = name.getAsString();
+        awaitToolsReady();
+        KernelTool tool = tools.get(toolName);
+        if (tool == null) {
+            return CompletableFuture.completedFuture(createErrorResponse(request, "Tool not found"));
+        }
+        JsonObject args = arguments != null && arguments.isJsonObject() ? arguments.getAsJsonObject() : new JsonObject();
+        KernelTool.Progress progress = progressFor(params, peer);
+        String explicitKey = metaString(params, "idempotencyKey");
+        // Retries are only recognised without an explicit key when the caller is an SSE session
+        // or a local connection. Inline HTTP callers are known only by address, which every agent
+        // on the device or behind the same bridge shares, along with request ids counted from 1.
+        String idJson = request.isNotification() || peer == null ? null : gson.toJson(request.getId());
+        String idempotencyKey = IdempotencyCache.keyFor(client, toolName, gson.toJson(args), idJson, explicitKey);
+        CompletableFuture<KernelTool.Result> call = idempotencyKey == null
+                ? runTool(tool, args, progress, client, request.getId(), explicitKey)
+                : idempotency.run(idempotencyKey, () -> runTool(tool, args, progress, client, request.getId(), explicitKey));
+        String key = request.isNotification() ? null : inFlightKey(peer, client, request.getId());
+        if (key != null) {
+            inFlight.put(key, call);
+            // The executor may have run the tool on this thread already.
+            if (call.isDone()) inFlight.remove(key, call);
+        }
+        return call.handle((result, failure) -> {
+            if (key != null) inFlight.remove(key, call);
+            if (failure instanceof CancellationException) {
+                return null;
+            }
+            if (failure != null) {
+                Log.e(TAG, "Tool " + toolName + " failed", failure);
+                return JsonRpcResponse.error(request.getId(), -32603, "Tool " + toolName + " failed: " + failure.getMessage());
+            }
+            return result.isError() ? createErrorResponse(request, result.getText()) : createSuccessResponse(request, result.getText());
+        });
+    }
+
+    // Tools with side effects are journaled first, so a call the process dies in the middle
+    // of can still be looked up after the restart.
+    private CompletableFuture<KernelTool.Result> runTool(KernelTool tool, JsonObject args, KernelTool.Progress progress,
+                                                         String client, JsonElement requestId, String idempotencyKey) {
+        long start = System.nanoTime();
+        CallJournal journal = this.journal;
+        CallJournal.Call journaled = journal == null || tool.isReadOnly() ? null : journal.begin(tool.getName(), requestId, idempotencyKey);
+        CompletableFuture<KernelTool.Result> call = toolExecutor.submit(tool, args, progress,
+                journaled != null ? journaled : KernelTool.Effects.NONE, client);
+        call.whenComplete((result, failure) -> {
+            metrics.tool(tool.getName()).record(System.nanoTime() - start, result == null || result.isError());
+            if (journaled != null) journaled.finish(result, failure);
+        });
+        return call;
+    }
+
+    private static String metaString(JsonObject params, String name) {
+        JsonElement meta = params.get("_meta");
+        if (meta == null || !meta.isJsonObject()) return null;
+        JsonElement value = meta.getAsJsonObject().get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    // MCP notifications/cancelled: interrupts the named tools/call if it is still running.
+    // Only calls made through the same peer (or, for inline requests, by the same client) can
+    // be cancelled.
+    private JsonRpcResponse cancelRequest(JsonRpcRequest request, RpcPeer peer, String client) {
+        JsonElement requestId = request.getParams().get("requestId");
+        if (requestId != null) {
+            CompletableFuture<KernelTool.Result> call = inFlight.remove(inFlightKey(peer, client, requestId));
+            if (call != null) {
+                call.cancel(true);
+                Log.i(TAG, "Cancelled tools/call " + requestId);
+            }
+        }
+        return null;
+    }
+
+    // Inline HTTP calls have no peer, so they are scoped to the client (the remote address);
+    // otherwise any client could cancel another's call by guessing its request id.
+    private static String inFlightKey(RpcPeer peer, String client, JsonElement requestId) {
+        return (peer != null ? peer.getId() : "inline:" + client) + "/" + requestId;
+    }
+
+    // Progress can only be delivered to clients that have a stream to receive it on.
+    private KernelTool.Progress progressFor(JsonObject params, RpcPeer peer) {
+        JsonElement meta = params.get("_meta");
+        JsonElement token = meta != null && meta.isJsonObject() ? meta.getAsJsonObject().get("progressToken") : null;
+        if (token == null || peer == null) {
+            return KernelTool.Progress.NONE;
+        }
+        return (progress, total, message) -> {
+            JsonObject progressParams = new JsonObject();
+            progressParams.add("progressToken", token);
+            progressParams.addProperty("progress", progress);
+            if (total > 0) progressParams.addProperty("total", total);
+            if (message != null) progressParams.addProperty("message", message);
+            JsonObject notification = new JsonObject();
+            notification.addProperty("jsonrpc", "2.0");
+            notification.addProperty("method", "notifications/progress");
+            notification.add("params", progressParams);
+            peer.send(gson.toJson(notification));
+        };
+    }
+
+    private void sendToPeer(RpcPeer peer, JsonRpcResponse reply) {
+        try {
+            peer.send(new String(codec.encode(reply).toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not encode reply for " + peer.getId(), e);
+        }
+    }
+
+    private JsonRpcResponse createSuccessResponse(JsonRpcRequest request, String content) {
+        return JsonRpcResponse.text(request.getId(), content);
+    }
+    
+    private JsonRpcResponse createErrorResponse(JsonRpcRequest request, String errorMessage) {
+        return JsonRpcResponse.error(request.getId(), -32000, errorMessage);
+    }
+}
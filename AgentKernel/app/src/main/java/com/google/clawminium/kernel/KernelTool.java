@@ -0,0 +1,97 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A device capability exposed over MCP. The schema advertised through tools/list and the
+ * handler behind tools/call live on the same object, so the two can't drift apart.
+ */
+public interface KernelTool {
+    enum Threading {
+        // Touches Looper-bound or UI APIs.
+        MAIN,
+        // Blocks on binder IPC, disk or network.
+        IO,
+        // Pure computation.
+        CPU
+    }
+
+    String getName();
+
+    String getDescription();
+
+    JsonObject getInputSchema();
+
+    Threading getThreading();
+
+    long getTimeoutMillis();
+
+    /** Rate-limit tokens a call costs the caller; every other JSON-RPC request costs 1. */
+    default int getCost() {
+        return 1;
+    }
+
+    /**
+     * Tools that only read state return true; they are advertised with MCP's readOnlyHint and
+     * their calls aren't journaled (see {@link CallJournal}).
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
+
+    Result call(JsonObject arguments) throws Exception;
+
+    /** Tools that can report how far along they are override this instead. */
+    default Result call(JsonObject arguments, Progress progress) throws Exception {
+        return call(arguments);
+    }
+
+    /** Tools whose side effects outlive the call (rows inserted, say) override this to record them. */
+    default Result call(JsonObject arguments, Progress progress, Effects effects) throws Exception {
+        return call(arguments, progress);
+    }
+
+    /** Sink for MCP notifications/progress; a no-op unless the client sent a progressToken. */
+    interface Progress {
+        Progress NONE = (progress, total, message) -> {};
+
+        /** {@code total} is 0 when unknown; {@code message} may be null. */
+        void report(long progress, long total, String message);
+    }
+
+    /**
+     * Where a tool notes each side effect as soon as it has happened, such as the URI of an
+     * inserted event, so that it can be found after a crash before the reply went out.
+     */
+    interface Effects {
+        Effects NONE = effect -> {};
+
+        void record(String effect);
+    }
+
+    final class Result {
+        private final boolean error;
+        private final String text;
+
+        private Result(boolean error, String text) {
+            this.error = error;
+            this.text = text;
+        }
+
+        public static Result success(String text) {
+            return new Result(false, text);
+        }
+
+        public static Result error(String message) {
+            return new Result(true, message);
+        }
+
+        public boolean isError() {
+            return error;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.google.clawminium.kernel;
+
+import android.util.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connection speaking newline-delimited JSON-RPC, the framing MCP uses over stdio: every
+ * message is a single line of UTF-8 JSON. Lines go through the same dispatcher as POST /rpc.
+ * tools/call replies and progress notifications are written whenever they are ready, so a
+ * client can keep several calls in flight on one connection and cancel them. Nothing here is
+ * tied to a socket type; {@link LocalRpcServer} runs it over a Unix domain socket.
+ */
+public final class LineRpcConnection implements RpcPeer, Runnable {
+    private static final String TAG = "AgentKernel";
+    private static final int READ_BUFFER_BYTES = 8 * 1024;
+    private static final AtomicLong ids = new AtomicLong();
+
+    private final KernelServer server;
+    private final Closeable connection;
+    private final InputStream in;
+    private final OutputStream out;
+    private final String id = "line-" + ids.incrementAndGet();
+    private final String client;
+    private volatile boolean open = true;
+
+    /** {@code client} is who requests are accounted to for rate limiting and scheduling. */
+    public LineRpcConnection(KernelServer server, Closeable connection, InputStream in, OutputStream out, String client) {
+        this.server = server;
+        this.connection = connection;
+        this.in = in;
+        this.out = out;
+        this.client = client;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean send(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return write(bytes, bytes.length);
+    }
+
+    private boolean write(byte[] bytes, int length) {
+        if (!open) return false;
+        synchronized (out) {
+            try {
+                out.write(bytes, 0, length);
+                out.write('\n');
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        byte[] buf = new byte[READ_BUFFER_BYTES];
+        int start = 0;
+        int end = 0;
+        int scanned = 0;
+        try {
+            while (open) {
+                int newline = -1;
+                for (int i = scanned; i < end; i++) {
+                    if (buf[i] == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    handleLine(buf, start, newline);
+                    start = newline + 1;
+                    scanned = start;
+                    continue;
+                }
+                scanned = end;
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    end -= start;
+                    scanned -= start;
+                    start = 0;
+                }
+                if (end == buf.length) {
+                    if (buf.length >= JsonRpcCodec.MAX_BODY_BYTES) {
+                        // Without a newline in sight there is no way to resynchronise.
+                        send("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32600,\"message\":\"Message exceeds " + JsonRpcCodec.MAX_BODY_BYTES + " bytes\"}}");
+                        break;
+                    }
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int read = in.read(buf, end, buf.length - end);
+                if (read < 0) break;
+                end += read;
+            }
+        } catch (IOException e) {
+            if (open) Log.w(TAG, "Connection " + id + " failed: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    private void handleLine(byte[] buf, int start, int end) throws IOException {
+        if (end > start && buf[end - 1] == '\r') end--;
+        if (end == start) return;
+        JsonRpcCodec.Encoded reply;
+        try {
+            reply = server.handleMessage(buf, start, end - start, this, client);
+        } catch (RuntimeException e) {
+            // handleMessage answers failures itself; this is the backstop that keeps an
+            // uncaught exception from killing the process.
+            Log.e(TAG, "Connection " + id + " failed on a message", e);
+            send("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32603,\"message\":\"Internal error\"}}");
+            return;
+        }
+        if (reply != null) {
+            // The reply is in this thread's encode buffer, so it is written before the next line.
+            write(reply.buffer(), reply.length());
+        }
+    }
+
+    public void close() {
+        open = false;
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.google.clawminium.kernel;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.CalendarContract;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads event instances (recurring events expanded) in a time range, one page at a time.
+ * Rows are written from the Cursor straight into a JsonWriter, so a page never exists as a
+ * list of objects, and pages are cut with keyset pagination on (begin, event_id): the cursor
+ * token names the last row returned, and the next query starts after it rather than skipping
+ * an offset. Memory and per-page cost stay flat however many events the range holds.
+ */
+public class ListCalendarEventsTool implements KernelTool {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 200;
+    private static final long DEFAULT_RANGE_MILLIS = 7L * 24 * 3600000;
+
+    // Field name in the reply -> Instances column.
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+    static {
+        FIELDS.put("id", CalendarContract.Instances.EVENT_ID);
+        FIELDS.put("title", CalendarContract.Instances.TITLE);
+        FIELDS.put("start", CalendarContract.Instances.BEGIN);
+        FIELDS.put("end", CalendarContract.Instances.END);
+        FIELDS.put("all_day", CalendarContract.Instances.ALL_DAY);
+        FIELDS.put("location", CalendarContract.Instances.EVENT_LOCATION);
+        FIELDS.put("description", CalendarContract.Instances.DESCRIPTION);
+        FIELDS.put("timezone", CalendarContract.Instances.EVENT_TIMEZONE);
+        FIELDS.put("calendar_id", CalendarContract.Instances.CALENDAR_ID);
+        FIELDS.put("calendar", CalendarContract.Instances.CALENDAR_DISPLAY_NAME);
+    }
+    private static final String[] DEFAULT_FIELDS = {"id", "title", "start", "end", "location"};
+    private static final String SORT_ORDER = CalendarContract.Instances.BEGIN + " ASC, " + CalendarContract.Instances.EVENT_ID + " ASC";
+    private static final String AFTER_POSITION = CalendarContract.Instances.BEGIN + " > ? OR (" + CalendarContract.Instances.BEGIN + " = ? AND " + CalendarContract.Instances.EVENT_ID + " > ?)";
+
+    private final ContentResolver cr;
+
+    public ListCalendarEventsTool(ContentResolver cr) {
+        this.cr = cr;
+    }
+
+    @Override
+    public String getName() {
+        return "list_calendar_events";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Lists events from the device's calendars in a time range, earliest first, with recurring events expanded. Returns at most 'limit' events; if more remain the reply has a 'next_cursor' to pass back as 'cursor' for the next page.";
+    }
+
+    @Override
+    public JsonObject getInputSchema() {
+        JsonObject properties = new JsonObject();
+        properties.add("start", property("number", "Optional. Range start as a Unix timestamp in milliseconds. Defaults to now."));
+        properties.add("end", property("number", "Optional. Range end as a Unix timestamp in milliseconds. Defaults to 7 days after start."));
+        JsonObject fields = property("array", "Optional. Fields to return per event. Defaults to id, title, start, end, location.");
+        JsonObject fieldNames = property("string", null);
+        JsonArray names = new JsonArray();
+        for (String name : FIELDS.keySet()) names.add(new JsonPrimitive(name));
+        fieldNames.add("enum", names);
+        fields.add("items", fieldNames);
+        properties.add("fields", fields);
+        properties.add("limit", property("number", "Optional. Events per page, 1 to " + MAX_LIMIT + ". Defaults to " + DEFAULT_LIMIT + "."));
+        properties.add("cursor", property("string", "Optional. The next_cursor of a previous reply; continues that listing (its range replaces start and end)."));
+
+        JsonObject inputSchema = new JsonObject();
+        inputSchema.addProperty("type", "object");
+        inputSchema.add("properties", properties);
+        return inputSchema;
+    }
+
+    private static JsonObject property(String type, String description) {
+        JsonObject prop = new JsonObject();
+        prop.addProperty("type", type);
+        if (description != null) prop.addProperty("description", description);
+        return prop;
+    }
+
+    @Override
+    public Threading getThreading() {
+        return Threading.IO;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return 10000;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public Result call(JsonObject args) throws IOException {
+        int limit = args.has("limit") ? args.get("limit").getAsInt() : DEFAULT_LIMIT;
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return Result.error("'limit' must be between 1 and " + MAX_LIMIT);
+        }
+        List<String> fields = new ArrayList<>();
+        if (args.has("fields") && args.get("fields").isJsonArray()) {
+            for (JsonElement field : args.getAsJsonArray("fields")) {
+                String name = field.getAsString();
+                if (!FIELDS.containsKey(name)) {
+                    return Result.error("Unknown field '" + name + "'; expected one of " + FIELDS.keySet());
+                }
+                if (!fields.contains(name)) fields.add(name);
+            }
+        }
+        if (fields.isEmpty()) {
+            for (String name : DEFAULT_FIELDS) fields.add(name);
+        }
+
+        EventListPosition position;
+        if (args.has("cursor")) {
+            position = EventListPosition.decode(args.get("cursor").getAsString());
+            if (position == null) {
+                return Result.error("Invalid cursor");
+            }
+        } else {
+            long start = args.has("start") ? args.get("start").getAsLong() : System.currentTimeMillis();
+            long end = args.has("end") ? args.get("end").getAsLong() : start + DEFAULT_RANGE_MILLIS;
+            if (end < start) {
+                return Result.error("'end' is before 'start'");
+            }
+            position = new EventListPosition(start, end, Long.MIN_VALUE, Long.MIN_VALUE);
+        }
+
+        // The key columns come first whatever was asked for; the rest follow in request order.
+        String[] projection = new String[fields.size() + 2];
+        projection[0] = CalendarContract.Instances.BEGIN;
+        projection[1] = CalendarContract.Instances.EVENT_ID;
+        for (int i = 0; i < fields.size(); i++) {
+            projection[i + 2] = FIELDS.get(fields.get(i));
+        }
+
+        Uri.Builder uri = CalendarContract.Instances.CONTENT_URI.buildUpon();
+        ContentUris.appendId(uri, position.rangeStart);
+        ContentUris.appendId(uri, position.rangeEnd);
+        Bundle query = new Bundle();
+        if (position.hasLast()) {
+            String last = Long.toString(position.lastBegin);
+            query.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, AFTER_POSITION);
+            query.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, new String[]{last, last, Long.toString(position.lastEventId)});
+        }
+        query.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER);
+        // Providers that don't honour the limit still work: reading stops one row past it.
+        query.putInt(ContentResolver.QUERY_ARG_LIMIT, limit + 1);
+
+        StringWriter text = new StringWriter();
+        JsonWriter out = new JsonWriter(text);
+        out.beginObject();
+        out.name("events").beginArray();
+        int count = 0;
+        boolean more = false;
+        long lastBegin = position.lastBegin;
+        long lastEventId = position.lastEventId;
+        try (Cursor cursor = cr.query(uri.build(), projection, query, null)) {
+            if (cursor == null) {
+                return Result.error("Calendar provider unavailable");
+            }
+            while (cursor.moveToNext()) {
+                if (count == limit) {
+                    more = true;
+                    break;
+                }
+                out.beginObject();
+                for (int i = 0; i < fields.size(); i++) {
+                    writeField(out, fields.get(i), cursor, i + 2);
+                }
+                out.endObject();
+                lastBegin = cursor.getLong(0);
+                lastEventId = cursor.getLong(1);
+                count++;
+            }
+        }
+        out.endArray();
+        out.name("count").value(count);
+        if (more) {
+            out.name("next_cursor").value(new EventListPosition(position.rangeStart, position.rangeEnd, lastBegin, lastEventId).encode());
+        }
+        out.endObject();
+        out.flush();
+        return Result.success(text.toString());
+    }
+
+    private static void writeField(JsonWriter out, String name, Cursor cursor, int column) throws IOException {
+        out.name(name);
+        if (cursor.isNull(column)) {
+            out.nullValue();
+            return;
+        }
+        switch (name) {
+            case "id":
+            case "start":
+            case "end":
+            case "calendar_id":
+                out.value(cursor.getLong(column));
+                break;
+            case "all_day":
+                out.value(cursor.getInt(column) != 0);
+                break;
+            default:
+                out.value(cursor.getString(column));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.google.clawminium.kernel;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * MCP over an abstract-namespace Unix socket for clients on the same device, such as the
+ * nanobot brain APK. Each connection speaks newline-delimited JSON-RPC
+ * ({@link LineRpcConnection}) and skips TCP loopback and HTTP framing entirely; the socket
+ * isn't reachable from the network. Requests are accounted to the peer's uid.
+ */
+public class LocalRpcServer {
+    private static final String TAG = "AgentKernel";
+
+    private final KernelServer server;
+    private final String name;
+    private final ThreadPoolExecutor connections;
+    private final Set<LineRpcConnection> open = ConcurrentHashMap.newKeySet();
+    private LocalServerSocket socket;
+    private Thread acceptor;
+    private volatile boolean stopped;
+
+    /** Each connection holds a thread for its lifetime, so {@code maxConnections} bounds both. */
+    public LocalRpcServer(KernelServer server, String name, int maxConnections) {
+        this.server = server;
+        this.name = name;
+        this.connections = KernelExecutors.newBoundedPool("kernel-local", maxConnections, 0, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public void start() throws IOException {
+        socket = new LocalServerSocket(name);
+        acceptor = new Thread(this::acceptLoop, "kernel-local-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (!stopped) {
+            LocalSocket peer;
+            try {
+                peer = socket.accept();
+            } catch (IOException e) {
+                if (!stopped) Log.e(TAG, "Local socket accept failed", e);
+                return;
+            }
+            if (stopped) {
+                closeQuietly(peer);
+                return;
+            }
+            try {
+                String client = "uid:" + peer.getPeerCredentials().getUid();
+                LineRpcConnection connection = new LineRpcConnection(server, () -> shutdown(peer), peer.getInputStream(),
+                        new BufferedOutputStream(peer.getOutputStream()), client);
+                connections.execute(() -> {
+                    open.add(connection);
+                    try {
+                        connection.run();
+                    } finally {
+                        open.remove(connection);
+                    }
+                });
+            } catch (IOException | RejectedExecutionException e) {
+                Log.w(TAG, "Refusing local connection: " + e);
+                closeQuietly(peer);
+            }
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        if (socket != null) {
+            // Closing a LocalServerSocket doesn't wake a thread blocked in accept(); a
+            // throwaway connection does.
+            try (LocalSocket wake = new LocalSocket()) {
+                wake.connect(new LocalSocketAddress(name));
+            } catch (IOException e) {
+                // Nothing was listening.
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close local socket", e);
+            }
+        }
+        for (LineRpcConnection connection : open) {
+            connection.close();
+        }
+        connections.shutdownNow();
+    }
+
+    // close() alone leaves a reader blocked on the socket; shutting input down wakes it.
+    private static void shutdown(LocalSocket peer) throws IOException {
+        try {
+            peer.shutdownInput();
+        } catch (IOException e) {
+            // Not connected any more.
+        }
+        peer.close();
+    }
+
+    private static void closeQuietly(LocalSocket peer) {
+        try {
+            peer.close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.google.clawminium.kernel;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client token buckets. Each client (a remote address, or a local connection's uid) may spend up
+ * to {@code burst} tokens at once and earns {@code tokensPerSecond} back; a request costs the
+ * weight of what it asks for (see {@link KernelTool#getCost()}). A request that doesn't fit
+ * is refused with the time until it would.
+ */
+public class RateLimiter {
+    // Past this many clients, buckets that have refilled completely are dropped, as a full
+    // bucket is the same as no bucket; if none has, the least recently used one goes.
+    private static final int MAX_CLIENTS = 1024;
+
+    private final double burst;
+    private final double tokensPerNano;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+
+    private static final class Bucket {
+        double tokens;
+        long updatedAt;
+
+        Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    public RateLimiter(double burst, double tokensPerSecond) {
+        this.burst = burst;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /** A limiter that admits everything, for embedding the server where there is one client. */
+    public static RateLimiter unlimited() {
+        return new RateLimiter(Double.POSITIVE_INFINITY, 0);
+    }
+
+    /**
+     * Takes {@code cost} tokens from {@code client}'s bucket. Returns 0 if the request may
+     * proceed, otherwise the milliseconds until it would be admitted; nothing is taken then.
+     * A cost larger than the burst (a big batch, say) is admitted only on a full bucket and
+     * charged in full, leaving the bucket in debt: the client then waits for all of it to
+     * refill, so batching doesn't buy more calls than sending them one by one.
+     */
+    public long acquire(String client, double cost) {
+        if (cost <= 0 || burst == Double.POSITIVE_INFINITY) return 0;
+        // What has to be in the bucket for the request to go ahead.
+        double required = Math.min(cost, burst);
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(client);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_CLIENTS) evictIdle(now);
+            bucket = buckets.computeIfAbsent(client, c -> new Bucket(burst, now));
+        }
+        synchronized (bucket) {
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updatedAt) * tokensPerNano);
+            bucket.updatedAt = now;
+            if (bucket.tokens >= required) {
+                bucket.tokens -= cost;
+                return 0;
+            }
+            throttled.increment();
+            return Math.max(1, (long) Math.ceil((required - bucket.tokens) / tokensPerNano / TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    private void evictIdle(long now) {
+        boolean evicted = false;
+        String leastRecent = null;
+        long leastRecentAt = 0;
+        for (Iterator<Map.Entry<String, Bucket>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Bucket> entry = it.next();
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                // Counting any debt, which a bucket only works off at the refill rate.
+                if (bucket.tokens + (now - bucket.updatedAt) * tokensPerNano >= burst) {
+                    it.remove();
+                    evicted = true;
+                } else if (leastRecent == null || bucket.updatedAt - leastRecentAt < 0) {
+                    leastRecent = entry.getKey();
+                    leastRecentAt = bucket.updatedAt;
+                }
+            }
+        }
+        if (!evicted && leastRecent != null) {
+            buckets.remove(leastRecent);
+        }
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    public int getClients() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,14 @@
+package com.google.clawminium.kernel;
+
+/**
+ * A client connection that can receive messages the client didn't just ask for: tools/call
+ * replies sent when the tool finishes, and progress notifications. An SSE stream or a local
+ * socket connection.
+ */
+public interface RpcPeer {
+    /** Unique among open peers; scopes request ids for notifications/cancelled. */
+    String getId();
+
+    /** Sends one JSON-RPC message; false if the peer has gone away. */
+    boolean send(String json);
+}
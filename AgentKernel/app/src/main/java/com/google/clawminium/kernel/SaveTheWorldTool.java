@@ -0,0 +1,43 @@
+package com.google.clawminium.kernel;
+
+import android.content.Intent;
+import com.google.gson.JsonObject;
+
+public class SaveTheWorldTool implements KernelTool {
+    private final UiDispatcher ui;
+
+    public SaveTheWorldTool(UiDispatcher ui) {
+        this.ui = ui;
+    }
+
+    @Override
+    public String getName() {
+        return "save_the_world";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Save the world.";
+    }
+
+    @Override
+    public JsonObject getInputSchema() {
+        return new JsonObject();
+    }
+
+    @Override
+    public Threading getThreading() {
+        return Threading.IO;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return 5000;
+    }
+
+    @Override
+    public Result call(JsonObject arguments) {
+        ui.launch(getName(), new Intent("com.clawminium.intent.action.SAVE_WORLD"));
+        return Result.success("The world has been saved.");
+    }
+}
@@ -0,0 +1,131 @@
+package com.google.clawminium.kernel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single connected SSE client. Frames are queued by whichever thread produces them and
+ * drained by the NanoHTTPD connection thread through {@link #stream()}, which parks on the
+ * queue until something is pushed instead of polling.
+ */
+public class SseSession implements RpcPeer {
+    // Queued last on close so a parked reader wakes up and ends the chunked response.
+    private static final byte[] EOF = new byte[0];
+
+    private final String id;
+    private final BlockingQueue<byte[]> outbound;
+    private final SseSessionRegistry registry;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile long lastSendMillis = System.currentTimeMillis();
+
+    SseSession(String id, int capacity, SseSessionRegistry registry) {
+        this.id = id;
+        this.outbound = new ArrayBlockingQueue<>(capacity);
+        this.registry = registry;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    /** Sends a JSON-RPC message as an MCP "message" event. */
+    @Override
+    public boolean send(String json) {
+        return sendEvent("message", json);
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    long getLastSendMillis() {
+        return lastSendMillis;
+    }
+
+    public boolean sendEvent(String event, String data) {
+        StringBuilder frame = new StringBuilder(data.length() + 32);
+        if (event != null) {
+            frame.append("event: ").append(event).append('\n');
+        }
+        for (String line : data.split("\n", -1)) {
+            frame.append("data: ").append(line).append('\n');
+        }
+        frame.append('\n');
+        return enqueue(frame.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean sendComment(String comment) {
+        return enqueue((": " + comment + "\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean enqueue(byte[] frame) {
+        if (closed.get()) return false;
+        if (!outbound.offer(frame)) {
+            // The client stopped draining its stream; drop it rather than block the producer.
+            close();
+            return false;
+        }
+        lastSendMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        registry.remove(id);
+        outbound.clear();
+        while (!outbound.offer(EOF)) {
+            outbound.poll();
+        }
+    }
+
+    public InputStream stream() {
+        return new EventStream();
+    }
+
+    private final class EventStream extends InputStream {
+        private byte[] current;
+        private int pos;
+        private boolean eof;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) return -1;
+            if (current == null || pos == current.length) {
+                try {
+                    current = outbound.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                pos = 0;
+                if (current == EOF) {
+                    eof = true;
+                    return -1;
+                }
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // NanoHTTPD closes the response data when the client goes away.
+            SseSession.this.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.google.clawminium.kernel;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live SSE sessions keyed by session id. A single shared scheduler sends keep-alive comments
+ * to idle sessions, which is also how dead connections are noticed and torn down.
+ */
+public class SseSessionRegistry {
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long HEARTBEAT_MILLIS = 15000;
+
+    private final Map<String, SseSession> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sse-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public SseSession open() {
+        String id = UUID.randomUUID().toString();
+        SseSession session = new SseSession(id, QUEUE_CAPACITY, this);
+        sessions.put(id, session);
+        return session;
+    }
+
+    public SseSession get(String id) {
+        return id != null ? sessions.get(id) : null;
+    }
+
+    void remove(String id) {
+        sessions.remove(id);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public void broadcast(String event, String data) {
+        for (SseSession session : sessions.values()) {
+            session.sendEvent(event, data);
+        }
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (SseSession session : sessions.values()) {
+            if (now - session.getLastSendMillis() >= HEARTBEAT_MILLIS) {
+                session.sendComment("ping");
+            }
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (SseSession session : sessions.values()) {
+            session.close();
+        }
+    }
+}
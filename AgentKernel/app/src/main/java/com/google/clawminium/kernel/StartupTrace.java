@@ -0,0 +1,60 @@
+package com.google.clawminium.kernel;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * When each startup phase was first reached, in milliseconds since the process started. Phases
+ * are marked from whichever thread reaches them; only the first mark of a phase counts.
+ */
+public final class StartupTrace {
+    public enum Phase {
+        SERVICE_CREATED,
+        SOCKET_BOUND,
+        FOREGROUND,
+        TOOLS_READY,
+        FIRST_RPC;
+
+        public String metricName() {
+            return "kernel_startup_" + name().toLowerCase(Locale.ROOT) + "_millis";
+        }
+    }
+
+    private static final long UNREACHED = -1;
+
+    private final long originNanos;
+    private final AtomicLongArray reachedAt = new AtomicLongArray(Phase.values().length);
+
+    /** {@code originNanos} is the {@link System#nanoTime()} value at process start. */
+    public StartupTrace(long originNanos) {
+        this.originNanos = originNanos;
+        for (int i = 0; i < reachedAt.length(); i++) reachedAt.set(i, UNREACHED);
+    }
+
+    public void mark(Phase phase) {
+        // Cheap enough to call on every request once the phase has been reached.
+        if (reachedAt.get(phase.ordinal()) != UNREACHED) return;
+        reachedAt.compareAndSet(phase.ordinal(), UNREACHED, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - originNanos));
+    }
+
+    /** Milliseconds from process start to {@code phase}, or -1 if it hasn't been reached. */
+    public long millis(Phase phase) {
+        return reachedAt.get(phase.ordinal());
+    }
+
+    public void register(KernelMetrics metrics) {
+        for (Phase phase : Phase.values()) {
+            metrics.gauge(phase.metricName(), "Milliseconds from process start to " + phase.name().toLowerCase(Locale.ROOT) + ", -1 until reached.", () -> millis(phase));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("startup");
+        for (Phase phase : Phase.values()) {
+            out.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=').append(millis(phase));
+        }
+        return out.toString();
+    }
+}
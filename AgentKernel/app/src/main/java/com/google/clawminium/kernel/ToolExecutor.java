@@ -0,0 +1,112 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonObject;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tool handlers on the thread class they declare and enforces their timeout. Calls are
+ * asynchronous: the caller gets a future and no thread waits on the tool. A tool that overruns
+ * is interrupted and its future completes with an error result; cancelling the future
+ * interrupts the tool as well. When the IO or CPU pool is saturated, waiting calls are taken
+ * round robin across clients (see {@link FairScheduler}).
+ */
+public class ToolExecutor {
+    private final Executor mainExecutor;
+    private final ThreadPoolExecutor ioPool;
+    private final ThreadPoolExecutor cpuPool;
+    private final FairScheduler io;
+    private final FairScheduler cpu;
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    public ToolExecutor(Executor mainExecutor, int ioThreads, int cpuThreads) {
+        this.mainExecutor = mainExecutor;
+        // When a client's backlog is full the calling thread runs the tool itself rather than failing it.
+        this.ioPool = KernelExecutors.newBoundedPool("kernel-io", ioThreads, ioThreads * 4, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.cpuPool = KernelExecutors.newBoundedPool("kernel-cpu", cpuThreads, cpuThreads * 4, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.io = new FairScheduler(ioPool, ioThreads, ioThreads * 4);
+        this.cpu = new FairScheduler(cpuPool, cpuThreads, cpuThreads * 4);
+        this.timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "kernel-tool-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    /** {@code client} identifies the caller for fair scheduling (session id or remote address). */
+    public CompletableFuture<KernelTool.Result> submit(KernelTool tool, JsonObject arguments, KernelTool.Progress progress,
+                                                       KernelTool.Effects effects, String client) {
+        CompletableFuture<KernelTool.Result> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                result.complete(tool.call(arguments, progress, effects));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, null);
+        // Interrupting the main thread would hit whatever the looper runs next, not the tool.
+        boolean interruptible = tool.getThreading() != KernelTool.Threading.MAIN;
+        ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+            if (result.complete(KernelTool.Result.error("Tool '" + tool.getName() + "' timed out after " + tool.getTimeoutMillis() + " ms"))) {
+                task.cancel(interruptible);
+            }
+        }, tool.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((r, t) -> {
+            timeout.cancel(false);
+            if (result.isCancelled()) task.cancel(interruptible);
+        });
+        switch (tool.getThreading()) {
+            case MAIN:
+                mainExecutor.execute(task);
+                break;
+            case CPU:
+                cpu.execute(client, task);
+                break;
+            case IO:
+            default:
+                io.execute(client, task);
+        }
+        return result;
+    }
+
+    /** Tool calls waiting for an IO or CPU thread. */
+    public int getQueued() {
+        return io.getQueued() + cpu.getQueued();
+    }
+
+    /**
+     * Stops taking calls and gives those already running up to {@code timeout} to finish, so
+     * their results (and journal completions) are reported. Whatever is left after that is
+     * interrupted and given a quarter as long again to unwind. Calls still queued never start.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        ioPool.shutdown();
+        cpuPool.shutdown();
+        io.clear();
+        cpu.clear();
+        try {
+            if (!awaitPools(System.nanoTime() + nanos)) {
+                ioPool.shutdownNow();
+                cpuPool.shutdownNow();
+                awaitPools(System.nanoTime() + nanos / 4);
+            }
+        } catch (InterruptedException e) {
+            ioPool.shutdownNow();
+            cpuPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        timeouts.shutdownNow();
+    }
+
+    private boolean awaitPools(long deadline) throws InterruptedException {
+        return ioPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                && cpuPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,125 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tools exposed by the kernel, keyed by name. Lookups for {@code tools/call} are a lock-free
+ * hash map read against a copy-on-write snapshot. The {@code tools/list} catalogue is
+ * serialized once per version into UTF-8 bytes; a reply is those bytes with the request id
+ * spliced in, so nothing is rebuilt or re-encoded until a tool is registered or removed.
+ */
+public class ToolRegistry {
+    private static final byte[] RESPONSE_PREFIX = "{\"jsonrpc\":\"2.0\",\"id\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESULT_PREFIX = ",\"result\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESPONSE_SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+
+    private final Gson gson;
+    private final Runnable onChange;
+    private volatile Map<String, KernelTool> tools = new LinkedHashMap<>();
+    private long version;
+    private Catalog catalog;
+
+    public ToolRegistry(Gson gson, Runnable onChange) {
+        this.gson = gson;
+        this.onChange = onChange;
+    }
+
+    public void register(KernelTool tool) {
+        synchronized (this) {
+            Map<String, KernelTool> updated = new LinkedHashMap<>(tools);
+            updated.put(tool.getName(), tool);
+            tools = updated;
+            version++;
+            catalog = null;
+        }
+        onChange.run();
+    }
+
+    public boolean unregister(String name) {
+        synchronized (this) {
+            if (!tools.containsKey(name)) return false;
+            Map<String, KernelTool> updated = new LinkedHashMap<>(tools);
+            updated.remove(name);
+            tools = updated;
+            version++;
+            catalog = null;
+        }
+        onChange.run();
+        return true;
+    }
+
+    public KernelTool get(String name) {
+        return tools.get(name);
+    }
+
+    public synchronized Catalog catalog() {
+        if (catalog == null) {
+            JsonArray definitions = new JsonArray();
+            for (KernelTool tool : tools.values()) {
+                JsonObject definition = new JsonObject();
+                definition.addProperty("name", tool.getName());
+                definition.addProperty("description", tool.getDescription());
+                definition.add("inputSchema", tool.getInputSchema());
+                if (tool.isReadOnly()) {
+                    JsonObject annotations = new JsonObject();
+                    annotations.addProperty("readOnlyHint", true);
+                    definition.add("annotations", annotations);
+                }
+                definitions.add(definition);
+            }
+            JsonObject result = new JsonObject();
+            result.add("tools", definitions);
+            catalog = new Catalog(version, result, gson.toJson(result).getBytes(StandardCharsets.UTF_8));
+        }
+        return catalog;
+    }
+
+    /** Immutable snapshot of one catalogue version. */
+    public final class Catalog {
+        public final long version;
+        public final String etag;
+        // Shared by every reply of this version; must not be mutated.
+        final JsonObject result;
+        private final byte[] resultBytes;
+
+        private Catalog(long version, JsonObject result, byte[] resultBytes) {
+            this.version = version;
+            this.result = result;
+            this.resultBytes = resultBytes;
+            this.etag = "\"" + digest(resultBytes) + "\"";
+        }
+
+        public byte[] toResponse(JsonElement id) {
+            byte[] idBytes = gson.toJson(id != null ? id : JsonNull.INSTANCE).getBytes(StandardCharsets.UTF_8);
+            byte[] out = new byte[RESPONSE_PREFIX.length + idBytes.length + RESULT_PREFIX.length + resultBytes.length + RESPONSE_SUFFIX.length];
+            int pos = 0;
+            for (byte[] part : new byte[][]{RESPONSE_PREFIX, idBytes, RESULT_PREFIX, resultBytes, RESPONSE_SUFFIX}) {
+                System.arraycopy(part, 0, out, pos, part.length);
+                pos += part.length;
+            }
+            return out;
+        }
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.google.clawminium.kernel;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Activity launches requested by tools. Each launch costs system_server tens of milliseconds,
+ * so launches are sent from a single background thread and, per target, at most once per
+ * window: the first launch after a quiet period goes out immediately, and anything requested
+ * within the window replaces the pending one and is sent when the window closes. Security
+ * alerts within a window collapse into one launch that carries how many were raised.
+ * Callers never wait for the launch.
+ */
+public class UiDispatcher {
+    private static final String TAG = "AgentKernel";
+    public static final String EXTRA_MESSAGE = "message";
+    public static final String EXTRA_COUNT = "count";
+    private static final String ALERT_KEY = "security-alert";
+
+    private final Context context;
+    private final long windowMillis;
+    private final ScheduledThreadPoolExecutor thread;
+    // Only touched on the dispatcher thread.
+    private final Map<String, Target> targets = new HashMap<>();
+    private final LongAdder launches = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    private static final class Target {
+        long lastSentAt = Long.MIN_VALUE;
+        Intent pending;
+        int alerts;
+        boolean scheduled;
+    }
+
+    public UiDispatcher(Context context, long windowMillis) {
+        this.context = context;
+        this.windowMillis = windowMillis;
+        this.thread = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "kernel-ui");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Launches {@code intent}, coalescing with other launches that share {@code key}. */
+    public void launch(String key, Intent intent) {
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        thread.execute(() -> {
+            Target target = target(key);
+            if (target.pending != null) coalesced.increment();
+            target.pending = intent;
+            dispatch(key, target);
+        });
+    }
+
+    /** Shows {@code message} in AlertActivity; repeats within a window become one alert with a count. */
+    public void securityAlert(String message) {
+        Intent intent = new Intent(context, AlertActivity.class);
+        intent.putExtra(EXTRA_MESSAGE, message);
+        // SINGLE_TOP hands a visible alert the update through onNewIntent instead of stacking another.
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        thread.execute(() -> {
+            Target target = target(ALERT_KEY);
+            if (target.pending != null) coalesced.increment();
+            target.alerts++;
+            target.pending = intent;
+            dispatch(ALERT_KEY, target);
+        });
+    }
+
+    private Target target(String key) {
+        Target target = targets.get(key);
+        if (target == null) {
+            target = new Target();
+            targets.put(key, target);
+        }
+        return target;
+    }
+
+    private void dispatch(String key, Target target) {
+        if (target.scheduled) return;
+        long now = System.nanoTime();
+        long waitMillis = target.lastSentAt == Long.MIN_VALUE ? 0 : windowMillis - TimeUnit.NANOSECONDS.toMillis(now - target.lastSentAt);
+        if (waitMillis <= 0) {
+            send(target, now);
+            return;
+        }
+        target.scheduled = true;
+        thread.schedule(() -> {
+            target.scheduled = false;
+            if (target.pending != null) send(target, System.nanoTime());
+        }, waitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void send(Target target, long now) {
+        Intent intent = target.pending;
+        target.pending = null;
+        target.lastSentAt = now;
+        if (target.alerts > 0) {
+            intent.putExtra(EXTRA_COUNT, target.alerts);
+            target.alerts = 0;
+        }
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        try {
+            pendingIntent.send();
+            launches.increment();
+        } catch (PendingIntent.CanceledException e) {
+            Log.e(TAG, "Failed to launch " + intent, e);
+        }
+    }
+
+    public long getLaunches() {
+        return launches.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public void shutdown() {
+        thread.shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.clawminium.kernel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one agent turn ({@link RpcRequests#agentTurn}) on the wire: TCP connections opened
+ * (each one a handshake round trip on top of the request round trips) and HTTP bytes sent and
+ * received, for a client that closes after every call, one that keeps the connection alive,
+ * and one that also accepts gzip. Each measured turn starts on a fresh client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50)
+@Measurement(iterations = 200)
+public class AgentTurnBenchmark {
+    @Param({"close", "keep-alive", "keep-alive+gzip"})
+    public String transport;
+
+    private BenchmarkServer server;
+    private LoopbackClient client;
+    private byte[][] turn;
+
+    /** Per-turn wire counters, reported next to the timing. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+        public long connections;
+        public long bytesSent;
+        public long bytesReceived;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            connections = 0;
+            bytesSent = 0;
+            bytesReceived = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = new BenchmarkServer().withSampleCatalog().start();
+    }
+
+    @Setup(Level.Iteration)
+    public void newClient() {
+        client = new LoopbackClient(server.port(), !"close".equals(transport), transport.endsWith("gzip"));
+        byte[][] bodies = RpcRequests.agentTurn();
+        turn = new byte[bodies.length][];
+        for (int i = 0; i < bodies.length; i++) {
+            turn[i] = client.prepare(bodies[i]);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeClient() {
+        client.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        server.stop();
+    }
+
+    @Benchmark
+    public void turn(Wire wire) throws IOException {
+        for (byte[] request : turn) {
+            client.call(request);
+        }
+        wire.connections = client.connections;
+        wire.bytesSent = client.bytesSent;
+        wire.bytesReceived = client.bytesReceived;
+    }
+}
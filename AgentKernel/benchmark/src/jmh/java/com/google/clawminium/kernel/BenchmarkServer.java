@@ -0,0 +1,133 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonObject;
+import fi.iki.elonen.NanoHTTPD;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A KernelServer on an ephemeral port with the production pool layout, minus Android: the
+ * main-thread executor is a single thread and the only tool is {@link EchoTool}.
+ */
+final class BenchmarkServer {
+    // Every keep-alive client holds an rpc thread for as long as it is connected, and replies
+    // close connections once half the pool is busy (BoundedAsyncRunner#canKeepAlive), so the
+    // pool is twice the largest scaling run rather than KernelService's 8 + 32.
+    static final int RPC_THREADS = 128;
+    static final int RPC_QUEUE_DEPTH = 32;
+    static final int SSE_THREADS = 64;
+
+    final SseSessionRegistry sseSessions = new SseSessionRegistry();
+    final BoundedAsyncRunner runner = new BoundedAsyncRunner(RPC_THREADS, RPC_QUEUE_DEPTH, SSE_THREADS, 0, 1);
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+    private final ThreadPoolExecutor dispatchPool = KernelExecutors.newBoundedPool("kernel-dispatch", 4, 64, new ThreadPoolExecutor.CallerRunsPolicy());
+    private final ToolExecutor toolExecutor = new ToolExecutor(mainThread, 4, 2);
+    final StartupTrace startup = new StartupTrace(System.nanoTime());
+    final KernelInstance instance = KernelInstance.forUid(0, 1, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory());
+    final KernelServer server = new KernelServer(0, instance, runner, sseSessions, dispatchPool, toolExecutor, RateLimiter.unlimited(), startup);
+
+    BenchmarkServer() {
+        // NanoHTTPD logs every socket closed under it at SEVERE, which floods JMH's output at teardown.
+        Logger.getLogger(NanoHTTPD.class.getName()).setLevel(Level.OFF);
+        server.getTools().register(new EchoTool());
+        server.markToolsReady();
+    }
+
+    BenchmarkServer start() throws IOException {
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        sseSessions.start();
+        return this;
+    }
+
+    int port() {
+        return server.getListeningPort();
+    }
+
+    void stop() {
+        server.stop();
+        sseSessions.shutdown();
+        runner.shutdown();
+        dispatchPool.shutdownNow();
+        toolExecutor.shutdown(0, TimeUnit.SECONDS);
+        mainThread.shutdownNow();
+    }
+
+    /**
+     * Registers tools shaped like a real device catalogue (calendar, contacts, settings, ...),
+     * so tools/list is about as large as the one agents actually fetch.
+     */
+    BenchmarkServer withSampleCatalog() {
+        ToolRegistry tools = server.getTools();
+        tools.register(new EchoTool("create_calendar_event", "Creates an event in the device's primary calendar and opens it for review. Use for a single appointment; for trips or several events use create_calendar_events.", "title", "time", "duration_minutes", "description", "location"));
+        tools.register(new EchoTool("create_calendar_events", "Use this instead of calling create_calendar_event repeatedly when planning a trip, itinerary or any set of several events. Inserts all events into the device's calendar in one transaction and returns their URIs.", "events", "open_ui"));
+        tools.register(new EchoTool("list_calendar_events", "Lists events in a time range from the device's calendars, newest first, with an opaque cursor for paging.", "start", "end", "fields", "limit", "cursor"));
+        tools.register(new EchoTool("search_contacts", "Finds contacts by name, email or phone number and returns their display names and primary addresses.", "query", "limit"));
+        tools.register(new EchoTool("send_notification", "Posts a notification to the user's shade with an optional action that opens a URI.", "title", "text", "uri"));
+        tools.register(new EchoTool("set_alarm", "Sets an alarm in the clock app for the given local time, with an optional label and repeat days.", "hour", "minute", "label", "days"));
+        tools.register(new EchoTool("get_device_state", "Returns battery level, charging state, connectivity and do-not-disturb status.", "fields"));
+        tools.register(new EchoTool("open_url", "Opens a URL in the default browser on the device.", "url"));
+        return this;
+    }
+
+    /** Returns its text argument; stands in for a cheap IO-bound tool such as the calendar ones. */
+    static final class EchoTool implements KernelTool {
+        private final String name;
+        private final String description;
+        private final String[] properties;
+
+        EchoTool() {
+            this("echo", "Returns its text argument.", "text");
+        }
+
+        EchoTool(String name, String description, String... properties) {
+            this.name = name;
+            this.description = description;
+            this.properties = properties;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public JsonObject getInputSchema() {
+            JsonObject props = new JsonObject();
+            for (String property : properties) {
+                JsonObject schema = new JsonObject();
+                schema.addProperty("type", "string");
+                schema.addProperty("description", "Optional. The " + property.replace('_', ' ') + " to use.");
+                props.add(property, schema);
+            }
+            JsonObject schema = new JsonObject();
+            schema.addProperty("type", "object");
+            schema.add("properties", props);
+            return schema;
+        }
+
+        @Override
+        public Threading getThreading() {
+            return Threading.IO;
+        }
+
+        @Override
+        public long getTimeoutMillis() {
+            return 5000;
+        }
+
+        @Override
+        public Result call(JsonObject arguments) {
+            return Result.success(arguments.has("text") ? arguments.get("text").getAsString() : "");
+        }
+    }
+}
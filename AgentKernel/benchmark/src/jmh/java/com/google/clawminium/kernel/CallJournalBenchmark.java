@@ -0,0 +1,59 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.JsonPrimitive;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Journal overhead of one tools/call: the durable start record the caller waits for, then the
+ * completion it doesn't. With concurrent callers, group commit should keep the per-call cost
+ * near one fsync however many calls share it; the teardown prints records per commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CallJournalBenchmark {
+    private static final KernelTool.Result RESULT = KernelTool.Result.success("Event created: content://com.android.calendar/events/1");
+
+    private File dir;
+    private CallJournal journal;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        dir = Files.createTempDirectory("call-journal").toFile();
+        journal = new CallJournal(new File(dir, "call-journal.jsonl"));
+        journal.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        journal.close();
+        System.out.printf("%n%d records in %d commits (%.1f per fsync)%n", journal.getRecords(), journal.getCommits(),
+                (double) journal.getRecords() / Math.max(1, journal.getCommits()));
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void call() {
+        journal.begin("create_calendar_event", new JsonPrimitive(1), null).finish(RESULT, null);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void concurrentCalls() {
+        journal.begin("create_calendar_event", new JsonPrimitive(1), null).finish(RESULT, null);
+    }
+}
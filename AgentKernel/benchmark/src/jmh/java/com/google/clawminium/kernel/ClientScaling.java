@@ -0,0 +1,38 @@
+package com.google.clawminium.kernel;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs {@link RpcLoopbackBenchmark} at 1 to 64 concurrent clients. JMH takes a single thread
+ * count per run, so the sweep is driven from here; results go to build/results/jmh/scaling-N.json.
+ */
+public final class ClientScaling {
+    private static final int[] CLIENTS = {1, 2, 4, 8, 16, 32, 64};
+
+    private ClientScaling() {}
+
+    public static void main(String[] args) throws RunnerException {
+        String resultDir = args.length > 0 ? args[0] : "build/results/jmh";
+        for (int clients : CLIENTS) {
+            Options options = new OptionsBuilder()
+                    .include(RpcLoopbackBenchmark.class.getSimpleName())
+                    .threads(clients)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .warmupTime(TimeValue.seconds(2))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(2))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultDir + "/scaling-" + clients + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.google.clawminium.kernel;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decode a tools/call request and encode its reply, the old way and through JsonRpcCodec.
+ * Compare gc.alloc.rate.norm between the two to see bytes allocated per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonRpcCodecBenchmark {
+    private static final byte[] TOOLS_CALL = ("{\"jsonrpc\":\"2.0\",\"id\":42,\"method\":\"tools/call\","
+            + "\"params\":{\"name\":\"create_calendar_event\","
+            + "\"arguments\":{\"title\":\"Flight to Tokyo\",\"time\":1767225600000}}}").getBytes(StandardCharsets.UTF_8);
+    private static final String RESULT_TEXT = "Event created and calendar opened: content://com.android.calendar/events/1234";
+
+    private final Gson gson = new Gson();
+    private final JsonRpcCodec codec = new JsonRpcCodec(new GsonBuilder().disableHtmlEscaping().create());
+    private ByteArrayInputStream body;
+
+    @Setup
+    public void setup() {
+        body = new ByteArrayInputStream(TOOLS_CALL);
+    }
+
+    // The pre-codec path: parseBody copies the body into a String in a map, Gson parses it
+    // into a tree, the reply is built as a tree and serialized to a String, then to bytes.
+    @Benchmark
+    public byte[] gsonTree(Blackhole bh) throws IOException {
+        body.reset();
+        byte[] raw = new byte[TOOLS_CALL.length];
+        body.read(raw, 0, raw.length);
+        Map<String, String> files = new HashMap<>();
+        files.put("postData", new String(raw, StandardCharsets.UTF_8));
+        JsonObject request = gson.fromJson(files.get("postData"), JsonObject.class);
+        String method = request.get("method").getAsString();
+        JsonObject params = request.get("params").getAsJsonObject();
+        bh.consume(method);
+        bh.consume(params.get("name").getAsString());
+        bh.consume(params.get("arguments").getAsJsonObject());
+
+        JsonObject response = new JsonObject();
+        JsonObject result = new JsonObject();
+        JsonArray contentArray = new JsonArray();
+        JsonObject text = new JsonObject();
+        text.addProperty("type", "text");
+        text.addProperty("text", RESULT_TEXT);
+        contentArray.add(text);
+        result.add("content", contentArray);
+        response.add("result", result);
+        response.addProperty("jsonrpc", "2.0");
+        response.addProperty("id", request.get("id").getAsInt());
+        return gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int streamingCodec(Blackhole bh) throws IOException {
+        body.reset();
+        JsonRpcCodec.Message message = codec.read(body, TOOLS_CALL.length);
+        JsonRpcRequest request = message.requests.get(0);
+        JsonObject params = request.getParams();
+        bh.consume(request.getMethod());
+        bh.consume(params.get("name").getAsString());
+        bh.consume(params.get("arguments").getAsJsonObject());
+
+        JsonRpcCodec.Encoded reply = codec.encode(JsonRpcResponse.text(request.getId(), RESULT_TEXT));
+        return reply.length();
+    }
+}
@@ -0,0 +1,63 @@
+package com.google.clawminium.kernel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Round-trip latency of the same JSON-RPC calls over keep-alive HTTP on TCP loopback and over
+ * newline-delimited JSON-RPC on a Unix domain socket (what {@link LocalRpcServer} serves on
+ * the device). Both go through the same KernelServer dispatcher.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalTransportBenchmark {
+    @Param({"http", "unix"})
+    public String transport;
+
+    @Param({"initialize", "tools/list", "tools/call"})
+    public String method;
+
+    private BenchmarkServer server;
+    private UnixLineServer unixServer;
+    private LoopbackClient httpClient;
+    private UnixLineClient unixClient;
+    private byte[] request;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = new BenchmarkServer().start();
+        byte[] body = RpcRequests.body(method);
+        if ("unix".equals(transport)) {
+            unixServer = new UnixLineServer(server.server);
+            unixClient = new UnixLineClient(unixServer.path);
+            request = UnixLineClient.prepare(body);
+        } else {
+            httpClient = new LoopbackClient(server.port());
+            request = httpClient.prepare(body);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        if (unixClient != null) unixClient.close();
+        if (unixServer != null) unixServer.stop();
+        if (httpClient != null) httpClient.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public int call() throws IOException {
+        return unixClient != null ? unixClient.call(request) : httpClient.call(request);
+    }
+}
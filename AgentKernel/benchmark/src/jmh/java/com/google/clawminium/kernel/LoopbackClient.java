@@ -0,0 +1,128 @@
+package com.google.clawminium.kernel;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP/1.1 client for POST /rpc. Requests are pre-encoded and responses are read into
+ * a reused buffer, so the client adds as little as possible to what is measured. It counts
+ * connections opened and bytes written and read (headers included) for the wire benchmarks.
+ */
+final class LoopbackClient implements AutoCloseable {
+    private final int port;
+    private final boolean keepAlive;
+    private final boolean gzip;
+    private final StringBuilder line = new StringBuilder();
+    private byte[] body = new byte[16 * 1024];
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
+    long connections;
+    long bytesSent;
+    long bytesReceived;
+
+    LoopbackClient(int port) {
+        this(port, true, false);
+    }
+
+    LoopbackClient(int port, boolean keepAlive, boolean gzip) {
+        this.port = port;
+        this.keepAlive = keepAlive;
+        this.gzip = gzip;
+    }
+
+    /** The full HTTP request for one JSON-RPC body, ready to pass to {@link #call}. */
+    byte[] prepare(byte[] rpcBody) {
+        byte[] head = ("POST /rpc HTTP/1.1\r\n"
+                + "Host: 127.0.0.1:" + port + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + (gzip ? "Accept-Encoding: gzip\r\n" : "")
+                + (keepAlive ? "" : "Connection: close\r\n")
+                + "Content-Length: " + rpcBody.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] request = new byte[head.length + rpcBody.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(rpcBody, 0, request, head.length, rpcBody.length);
+        return request;
+    }
+
+    /** Sends the request and reads the whole response; returns the body length on the wire. */
+    int call(byte[] request) throws IOException {
+        if (socket == null) connect();
+        try {
+            return exchange(request);
+        } catch (IOException e) {
+            // The server may have timed out an idle keep-alive connection between iterations.
+            close();
+            connect();
+            return exchange(request);
+        }
+    }
+
+    private int exchange(byte[] request) throws IOException {
+        out.write(request);
+        out.flush();
+        bytesSent += request.length;
+        String status = readLine();
+        if (!status.startsWith("HTTP/1.1 200")) {
+            throw new IOException("Unexpected response: " + status);
+        }
+        int length = -1;
+        boolean closing = !keepAlive;
+        for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+            if (header.regionMatches(true, 0, "content-length:", 0, 15)) {
+                length = Integer.parseInt(header.substring(15).trim());
+            } else if (header.regionMatches(true, 0, "connection: close", 0, 17)) {
+                closing = true;
+            }
+        }
+        if (length < 0) throw new IOException("Response without Content-Length");
+        if (length > body.length) body = new byte[length];
+        int n = 0;
+        while (n < length) {
+            int read = in.read(body, n, length - n);
+            if (read < 0) throw new EOFException();
+            n += read;
+        }
+        bytesReceived += length;
+        if (closing) close();
+        return length;
+    }
+
+    private String readLine() throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) throw new EOFException();
+            if (c != '\r') line.append((char) c);
+        }
+        bytesReceived += line.length() + 2;
+        return line.toString();
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        in = new BufferedInputStream(socket.getInputStream());
+        out = socket.getOutputStream();
+        connections++;
+    }
+
+    @Override
+    public void close() {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already gone.
+        }
+        socket = null;
+    }
+}
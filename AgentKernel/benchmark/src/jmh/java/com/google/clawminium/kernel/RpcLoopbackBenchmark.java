@@ -0,0 +1,68 @@
+package com.google.clawminium.kernel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end JSON-RPC over loopback HTTP: each JMH thread is one keep-alive client. Throughput
+ * mode gives calls/s, SampleTime gives the p50/p99 latency distribution. Run with {@code -t N}
+ * (or {@link ClientScaling}) to vary the number of concurrent clients.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RpcLoopbackBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        BenchmarkServer server;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            server = new BenchmarkServer().start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            long rejected = server.runner.getRejectedCount();
+            server.stop();
+            if (rejected > 0) {
+                throw new IllegalStateException(rejected + " connections were rejected; results are not comparable");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        @Param({"initialize", "tools/list", "tools/call"})
+        public String method;
+
+        LoopbackClient client;
+        byte[] request;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) {
+            client = new LoopbackClient(server.server.port());
+            request = client.prepare(RpcRequests.body(method));
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public int call(Client client) throws IOException {
+        return client.client.call(client.request);
+    }
+}
@@ -0,0 +1,57 @@
+package com.google.clawminium.kernel;
+
+import java.nio.charset.StandardCharsets;
+
+/** JSON-RPC bodies shared by the benchmarks. */
+final class RpcRequests {
+    private RpcRequests() {}
+
+    static byte[] body(String method) {
+        String json;
+        switch (method) {
+            case "initialize":
+                json = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{\"protocolVersion\":\"2025-11-25\","
+                        + "\"capabilities\":{},\"clientInfo\":{\"name\":\"bench\",\"version\":\"1\"}}}";
+                break;
+            case "tools/list":
+                json = "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}";
+                break;
+            case "tools/call":
+                json = "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"tools/call\","
+                        + "\"params\":{\"name\":\"echo\",\"arguments\":{\"text\":\"Flight to Tokyo at 09:40\"}}}";
+                break;
+            default:
+                throw new IllegalArgumentException(method);
+        }
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One agent turn as the nanobot client makes it: handshake, catalogue, then tool calls
+     * whose replies range from a one-line confirmation to a bulk insert's list of event URIs.
+     */
+    static byte[][] agentTurn() {
+        StringBuilder uris = new StringBuilder("Created 40 events:");
+        for (int i = 0; i < 40; i++) {
+            uris.append("\\ncontent://com.android.calendar/events/").append(1000 + i);
+        }
+        String[] json = {
+                new String(body("initialize"), StandardCharsets.UTF_8),
+                "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}",
+                new String(body("tools/list"), StandardCharsets.UTF_8),
+                toolCall(4, "Event created and calendar opened: content://com.android.calendar/events/998"),
+                toolCall(5, uris.toString()),
+                toolCall(6, "Alarm set for 07:30"),
+        };
+        byte[][] bodies = new byte[json.length][];
+        for (int i = 0; i < json.length; i++) {
+            bodies[i] = json[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bodies;
+    }
+
+    private static String toolCall(int id, String text) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"tools/call\","
+                + "\"params\":{\"name\":\"echo\",\"arguments\":{\"text\":\"" + text + "\"}}}";
+    }
+}
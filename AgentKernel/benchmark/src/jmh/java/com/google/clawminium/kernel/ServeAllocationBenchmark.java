@@ -0,0 +1,133 @@
+package com.google.clawminium.kernel;
+
+import fi.iki.elonen.NanoHTTPD;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * KernelServer.serve() for one POST /rpc, without sockets or NanoHTTPD's header parsing.
+ * Run with {@code -prof gc}: gc.alloc.rate.norm is the server's bytes allocated per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServeAllocationBenchmark {
+    @Param({"initialize", "tools/list", "tools/call"})
+    public String method;
+
+    private BenchmarkServer server;
+    private RpcSession session;
+    private final byte[] drain = new byte[16 * 1024];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        server = new BenchmarkServer();
+        session = new RpcSession(RpcRequests.body(method));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        server.stop();
+    }
+
+    @Benchmark
+    public int serve() throws IOException {
+        session.body.reset();
+        NanoHTTPD.Response response = server.server.serve(session);
+        int total = 0;
+        try (InputStream data = response.getData()) {
+            for (int n; (n = data.read(drain)) > 0; ) total += n;
+        }
+        return total;
+    }
+
+    /** A parsed POST /rpc as NanoHTTPD hands it to serve(), with the body still unread. */
+    private static final class RpcSession implements NanoHTTPD.IHTTPSession {
+        final ByteArrayInputStream body;
+        private final Map<String, String> headers = new HashMap<>();
+
+        RpcSession(byte[] rpcBody) {
+            body = new ByteArrayInputStream(rpcBody);
+            headers.put("host", "127.0.0.1:8080");
+            headers.put("content-type", "application/json");
+            headers.put("content-length", Integer.toString(rpcBody.length));
+        }
+
+        @Override
+        public void execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NanoHTTPD.CookieHandler getCookies() {
+            return null;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return body;
+        }
+
+        @Override
+        public NanoHTTPD.Method getMethod() {
+            return NanoHTTPD.Method.POST;
+        }
+
+        @Override
+        @Deprecated
+        public Map<String, String> getParms() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, List<String>> getParameters() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public String getQueryParameterString() {
+            return null;
+        }
+
+        @Override
+        public String getUri() {
+            return "/rpc";
+        }
+
+        @Override
+        public void parseBody(Map<String, String> files) {
+            throw new UnsupportedOperationException("KernelServer reads the body itself");
+        }
+
+        @Override
+        public String getRemoteIpAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getRemoteHostName() {
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.google.clawminium.kernel;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time from a server-side broadcast (as sent for notifications/tools/list_changed) until every
+ * connected GET /sse client has read the frame off its socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SseFanoutBenchmark {
+    private static final String MESSAGE = "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/tools/list_changed\"}";
+
+    @Param({"1", "8", "64"})
+    public int sessions;
+
+    private BenchmarkServer server;
+    private final List<Socket> sockets = new ArrayList<>();
+    private final Semaphore delivered = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void connect() throws Exception {
+        server = new BenchmarkServer().start();
+        CountDownLatch attached = new CountDownLatch(sessions);
+        for (int i = 0; i < sessions; i++) {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress("127.0.0.1", server.port()));
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /sse HTTP/1.1\r\nHost: 127.0.0.1:" + server.port() + "\r\nAccept: text/event-stream\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            sockets.add(socket);
+            Thread reader = new Thread(() -> read(socket, attached), "sse-client-" + i);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        if (!attached.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("SSE clients did not receive their endpoint event");
+        }
+    }
+
+    // Counts "event: message" frames; chunk-size lines and heartbeats never match.
+    private void read(Socket socket, CountDownLatch attached) {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+            while (true) {
+                String text = readLine(in, line);
+                if (text.equals("event: endpoint")) {
+                    attached.countDown();
+                } else if (text.equals("event: message")) {
+                    delivered.release();
+                }
+            }
+        } catch (IOException e) {
+            // Closed at teardown.
+        }
+    }
+
+    private static String readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) throw new EOFException();
+            if (c != '\r') line.write(c);
+        }
+        return line.toString("UTF-8");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        sockets.clear();
+        server.stop();
+    }
+
+    @Benchmark
+    public void broadcast() throws InterruptedException {
+        server.sseSessions.broadcast("message", MESSAGE);
+        if (!delivered.tryAcquire(sessions, 10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Broadcast not delivered to all " + sessions + " sessions");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.google.clawminium.kernel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start to first served RPC: construct and start the server, then make the agent's first
+ * two calls on a fresh connection. Every sample runs in a new JVM so class loading and Gson's
+ * adapter setup are paid each time, as after a boot. Run with {@code gradle jmhStartup}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+    @Benchmark
+    public long firstRpc() throws IOException {
+        BenchmarkServer server = new BenchmarkServer().start();
+        try (LoopbackClient client = new LoopbackClient(server.port())) {
+            client.call(client.prepare(RpcRequests.body("initialize")));
+            client.call(client.prepare(RpcRequests.body("tools/list")));
+            return server.startup.millis(StartupTrace.Phase.FIRST_RPC);
+        } finally {
+            server.stop();
+        }
+    }
+}
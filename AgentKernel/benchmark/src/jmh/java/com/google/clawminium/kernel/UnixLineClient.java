@@ -0,0 +1,63 @@
+package com.google.clawminium.kernel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/** Newline-delimited JSON-RPC client for {@link UnixLineServer}; the counterpart of {@link LoopbackClient}. */
+final class UnixLineClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final InputStream in;
+    private final OutputStream out;
+    private final byte[] buf = new byte[16 * 1024];
+    private int start;
+    private int end;
+
+    UnixLineClient(Path path) throws IOException {
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(path));
+        in = UnixLineServer.in(channel);
+        out = UnixLineServer.out(channel);
+    }
+
+    /** The request line for one JSON-RPC body, ready to pass to {@link #call}. */
+    static byte[] prepare(byte[] rpcBody) {
+        byte[] line = new byte[rpcBody.length + 1];
+        System.arraycopy(rpcBody, 0, line, 0, rpcBody.length);
+        line[rpcBody.length] = '\n';
+        return line;
+    }
+
+    /** Sends the line and reads one reply line; returns its length. */
+    int call(byte[] line) throws IOException {
+        out.write(line, 0, line.length);
+        while (true) {
+            for (int i = start; i < end; i++) {
+                if (buf[i] == '\n') {
+                    int length = i - start;
+                    start = i + 1;
+                    return length;
+                }
+            }
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buf.length) throw new IOException("Reply longer than " + buf.length + " bytes");
+            int read = in.read(buf, end, buf.length - end);
+            if (read < 0) throw new EOFException();
+            end += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,95 @@
+package com.google.clawminium.kernel;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The JVM stand-in for {@link LocalRpcServer}: {@link LineRpcConnection}s over an AF_UNIX
+ * socket, here a filesystem path since the JDK has no abstract namespace. Each connection
+ * gets its own thread, as on the device.
+ */
+final class UnixLineServer {
+    final Path path;
+    private final ServerSocketChannel channel;
+    private final Thread acceptor;
+
+    UnixLineServer(KernelServer server) throws IOException {
+        Path dir = Files.createTempDirectory("kernel-bench");
+        path = dir.resolve("kernel.sock");
+        channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(path));
+        acceptor = new Thread(() -> {
+            while (channel.isOpen()) {
+                try {
+                    SocketChannel peer = channel.accept();
+                    Thread connection = new Thread(new LineRpcConnection(server, peer, in(peer), new BufferedOutputStream(out(peer)), "bench"), "bench-unix");
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "bench-unix-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    void stop() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.getParent());
+    }
+
+    // Channels.newInputStream/newOutputStream share the channel's blocking lock, so a thread
+    // parked in read would hold up every write. These go to the channel directly.
+    static InputStream in(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    static OutputStream out(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
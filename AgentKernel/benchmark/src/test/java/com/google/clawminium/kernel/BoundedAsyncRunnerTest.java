@@ -0,0 +1,103 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class BoundedAsyncRunnerTest {
+    private static final String DISCOVERY = "GET /discovery HTTP/1.1\r\nHost: test\r\n\r\n";
+
+    private final BoundedAsyncRunner runner = new BoundedAsyncRunner(2, 4, 2, 0, 1);
+    private final ToolExecutor toolExecutor = new ToolExecutor(Runnable::run, 1, 1);
+    private final KernelServer server = new KernelServer(0, KernelInstance.forUid(0, 1, 4, 1L << 30), runner,
+            new SseSessionRegistry(), KernelExecutors.newBoundedPool("test-dispatch", 2, 8, new ThreadPoolExecutor.CallerRunsPolicy()),
+            toolExecutor, RateLimiter.unlimited(), new StartupTrace(System.nanoTime()));
+
+    @After
+    public void stop() {
+        server.stop();
+        runner.shutdown();
+        toolExecutor.shutdown(0, TimeUnit.SECONDS);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getListeningPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    // The status line and headers of the next response, lower-cased.
+    private static String readHead(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        StringBuilder head = new StringBuilder();
+        while (head.indexOf("\r\n\r\n") < 0) {
+            int b = in.read();
+            if (b < 0) break;
+            head.append((char) b);
+        }
+        return head.toString().toLowerCase();
+    }
+
+    private static void skipBody(Socket socket, String head) throws IOException {
+        int start = head.indexOf("content-length: ") + "content-length: ".length();
+        int length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        InputStream in = socket.getInputStream();
+        for (int i = 0; i < length; i++) {
+            assertTrue(in.read() >= 0);
+        }
+    }
+
+    @Test
+    public void closesConnectionsOnceHalfThePoolIsBusy() throws IOException {
+        server.markToolsReady();
+        server.start(30000, false);
+        try (Socket idle = connect()) {
+            idle.getOutputStream().write(DISCOVERY.getBytes(StandardCharsets.US_ASCII));
+            String first = readHead(idle);
+            assertTrue(first, first.contains("connection: keep-alive"));
+            // The idle connection still holds one of the two rpc threads.
+            try (Socket next = connect()) {
+                next.getOutputStream().write(DISCOVERY.getBytes(StandardCharsets.US_ASCII));
+                String second = readHead(next);
+                assertTrue(second, second.contains("connection: close"));
+                skipBody(next, second);
+            }
+        }
+    }
+
+    @Test
+    public void dropsConnectionsThatSendNothing() throws IOException {
+        server.markToolsReady();
+        server.start(30000, false);
+        try (Socket silent = connect()) {
+            long start = System.nanoTime();
+            assertEquals(-1, silent.getInputStream().read());
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("closed after " + millis + " ms", millis < 5000);
+        }
+    }
+
+    @Test
+    public void keepsTheSocketTimeoutForKeptAliveConnections() throws Exception {
+        server.markToolsReady();
+        server.start(30000, false);
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(DISCOVERY.getBytes(StandardCharsets.US_ASCII));
+            String head = readHead(socket);
+            assertTrue(head, head.startsWith("http/1.1 200"));
+            skipBody(socket, head);
+            // Longer than the classification timeout, well within the keep-alive one.
+            Thread.sleep(2500);
+            socket.getOutputStream().write(DISCOVERY.getBytes(StandardCharsets.US_ASCII));
+            assertTrue(readHead(socket).startsWith("http/1.1 200"));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonPrimitive;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CallJournalTest {
+    @Rule
+    public final TemporaryFolder dir = new TemporaryFolder();
+
+    private File file() {
+        return new File(dir.getRoot(), "calls.jsonl");
+    }
+
+    private CallJournal open() throws IOException {
+        CallJournal journal = new CallJournal(file());
+        journal.open();
+        return journal;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void reportsUnfinishedCallsAsInterruptedAfterReplay() throws IOException {
+        CallJournal journal = open();
+        CallJournal.Call call = journal.begin("create_calendar_event", new JsonPrimitive(7), "key");
+        assertNotNull(call);
+        call.record("content://com.android.calendar/events/1");
+        assertEquals(CallJournal.State.RUNNING, journal.snapshot().get(0).getState());
+        // The process dies before finish().
+        journal.close();
+
+        CallJournal reopened = open();
+        List<CallJournal.Entry> entries = reopened.snapshot();
+        assertEquals(1, entries.size());
+        CallJournal.Entry entry = entries.get(0);
+        assertEquals(CallJournal.State.INTERRUPTED, entry.getState());
+        assertEquals("create_calendar_event", entry.tool);
+        assertEquals(new JsonPrimitive(7), entry.requestId);
+        assertEquals("key", entry.idempotencyKey);
+        assertEquals(Collections.singletonList("content://com.android.calendar/events/1"), entry.getEffects());
+        reopened.close();
+    }
+
+    @Test
+    public void reportsFinishedCallsWithTheirOutcome() throws IOException {
+        CallJournal journal = open();
+        journal.begin("a", new JsonPrimitive(1), null).finish(KernelTool.Result.success("ok"), null);
+        journal.begin("b", new JsonPrimitive(2), null).finish(KernelTool.Result.error("no"), null);
+        journal.close();
+
+        CallJournal reopened = open();
+        List<CallJournal.Entry> entries = reopened.snapshot();
+        assertEquals(2, entries.size());
+        assertEquals(CallJournal.State.COMPLETED, entries.get(0).getState());
+        assertEquals("ok", entries.get(0).getResult());
+        assertEquals(CallJournal.State.FAILED, entries.get(1).getState());
+        assertEquals("no", entries.get(1).getResult());
+        reopened.close();
+    }
+
+    @Test
+    public void commitsRecordsStillQueuedWhenClosed() throws IOException {
+        CallJournal journal = open();
+        List<CallJournal.Call> calls = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            calls.add(journal.begin("t", new JsonPrimitive(i), null));
+        }
+        // Completions aren't waited for, so these are still queued when close() runs.
+        for (CallJournal.Call call : calls) {
+            call.finish(KernelTool.Result.success("ok"), null);
+        }
+        journal.close();
+
+        CallJournal reopened = open();
+        List<CallJournal.Entry> entries = reopened.snapshot();
+        assertEquals(50, entries.size());
+        for (CallJournal.Entry entry : entries) {
+            assertEquals(CallJournal.State.COMPLETED, entry.getState());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void compactsWhileRunning() throws IOException {
+        CallJournal journal = open();
+        int calls = 700;
+        for (int i = 0; i < calls; i++) {
+            CallJournal.Call call = journal.begin("t", new JsonPrimitive(i), null);
+            call.record("effect-" + i);
+            call.finish(KernelTool.Result.success("ok"), null);
+        }
+        journal.close();
+        int lines = Files.readAllLines(file().toPath(), StandardCharsets.UTF_8).size();
+        assertTrue("lines " + lines, lines < 3 * calls);
+
+        CallJournal reopened = open();
+        List<CallJournal.Entry> entries = reopened.snapshot();
+        CallJournal.Entry last = entries.get(entries.size() - 1);
+        assertEquals(new JsonPrimitive(calls - 1), last.requestId);
+        assertEquals(CallJournal.State.COMPLETED, last.getState());
+        assertEquals(Collections.singletonList("effect-" + (calls - 1)), last.getEffects());
+        for (CallJournal.Entry entry : entries) {
+            assertEquals(1, entry.getEffects().size());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void keepsRecordsBeforeATornTail() throws IOException {
+        write(file(), "{\"op\":\"start\",\"call\":\"r-1\",\"at\":1,\"tool\":\"t\",\"request_id\":1}\n"
+                + "{\"op\":\"effect\",\"call\":\"r-1\",\"at\":2,\"effect\":\"e1\"}\n"
+                + "{\"op\":\"effect\",\"call\":\"r-1\",\"at\":3,\"eff");
+
+        CallJournal journal = open();
+        List<CallJournal.Entry> entries = journal.snapshot();
+        assertEquals(1, entries.size());
+        assertEquals(CallJournal.State.INTERRUPTED, entries.get(0).getState());
+        assertEquals(Collections.singletonList("e1"), entries.get(0).getEffects());
+        journal.close();
+
+        // Compaction dropped the torn record; the file is whole again.
+        for (String line : Files.readAllLines(file().toPath(), StandardCharsets.UTF_8)) {
+            assertTrue(line, line.endsWith("}"));
+        }
+    }
+
+    @Test
+    public void stopsReplayAtARecordMissingFields() throws IOException {
+        write(file(), "{\"op\":\"start\",\"call\":\"r-1\",\"at\":1,\"tool\":\"t\"}\n"
+                + "{\"op\":\"effect\",\"call\":\"r-1\",\"at\":2,\"effect\":\"e1\"}\n"
+                + "{\"op\":\"done\",\"call\":\"r-1\",\"at\":3}\n"
+                + "{\"op\":\"start\",\"call\":\"r-2\",\"at\":4,\"tool\":\"t\"}\n");
+
+        CallJournal journal = open();
+        List<CallJournal.Entry> entries = journal.snapshot();
+        // The done record without 'error' isn't applied, and nothing after it is.
+        assertEquals(1, entries.size());
+        assertEquals("r-1", entries.get(0).id);
+        assertEquals(CallJournal.State.INTERRUPTED, entries.get(0).getState());
+        assertEquals(Arrays.asList("e1"), entries.get(0).getEffects());
+        journal.close();
+    }
+}
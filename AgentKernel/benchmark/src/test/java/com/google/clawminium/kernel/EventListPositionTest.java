@@ -0,0 +1,54 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.Test;
+
+public class EventListPositionTest {
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void roundTrips() {
+        EventListPosition position = EventListPosition.decode(new EventListPosition(1000, 2000, 1500, 42).encode());
+        assertEquals(1000, position.rangeStart);
+        assertEquals(2000, position.rangeEnd);
+        assertEquals(1500, position.lastBegin);
+        assertEquals(42, position.lastEventId);
+        assertTrue(position.hasLast());
+    }
+
+    @Test
+    public void roundTripsTheFirstPageAndNegativeTimes() {
+        EventListPosition position = EventListPosition.decode(new EventListPosition(-86400000, 0, Long.MIN_VALUE, Long.MIN_VALUE).encode());
+        assertEquals(-86400000, position.rangeStart);
+        assertEquals(0, position.rangeEnd);
+        assertFalse(position.hasLast());
+    }
+
+    @Test
+    public void tokensAreUrlSafe() {
+        String token = new EventListPosition(Long.MAX_VALUE - 1, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE).encode();
+        assertTrue(token, token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void rejectsBadCursors() {
+        assertNull(EventListPosition.decode(""));
+        assertNull(EventListPosition.decode("not base64!"));
+        assertNull(EventListPosition.decode(token("garbage")));
+        // Another version, or the wrong number of parts.
+        assertNull(EventListPosition.decode(token("2:1000:2000:1500:42")));
+        assertNull(EventListPosition.decode(token("1:1000:2000:1500")));
+        assertNull(EventListPosition.decode(token("1:1000:2000:1500:42:7")));
+        assertNull(EventListPosition.decode(token("1:1000:2000:x:42")));
+        // A range that ends before it starts.
+        assertNull(EventListPosition.decode(token("1:2000:1000:1500:42")));
+    }
+}
@@ -0,0 +1,96 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class FairSchedulerTest {
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private Runnable task(String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    // Occupies the scheduler's only slot until released.
+    private CountDownLatch block(FairScheduler scheduler) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute("blocker", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    public void servesWaitingClientsRoundRobin() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler(pool, 1, 8);
+        CountDownLatch release = block(scheduler);
+        CountDownLatch done = new CountDownLatch(6);
+        scheduler.execute("a", task("a1", done));
+        scheduler.execute("a", task("a2", done));
+        scheduler.execute("a", task("a3", done));
+        scheduler.execute("b", task("b1", done));
+        scheduler.execute("b", task("b2", done));
+        scheduler.execute("c", task("c1", done));
+        assertEquals(6, scheduler.getQueued());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "b2", "a3"), order);
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    public void runsOnTheCallerWhenTheClientsQueueIsFull() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler(pool, 1, 1);
+        CountDownLatch release = block(scheduler);
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.execute("a", task("a1", done));
+        // a's queue is full: a2 runs right here, before anything queued.
+        scheduler.execute("a", task("a2", done));
+        assertEquals(Collections.singletonList("a2"), order);
+        // Another client still gets its queue slot.
+        scheduler.execute("b", task("b1", done));
+        assertEquals(2, scheduler.getQueued());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a2", "a1", "b1"), order);
+    }
+
+    @Test
+    public void startsTasksDirectlyWhileUnderTheLimit() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler(pool, 2, 8);
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.execute("a", task("a1", done));
+        scheduler.execute("a", task("a2", done));
+        assertEquals(0, scheduler.getQueued());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueued());
+    }
+}
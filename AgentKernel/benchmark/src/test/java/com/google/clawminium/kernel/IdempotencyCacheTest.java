@@ -0,0 +1,63 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class IdempotencyCacheTest {
+    private final IdempotencyCache cache = new IdempotencyCache(16, 10, TimeUnit.MINUTES);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private String run(String key, KernelTool.Result result) throws Exception {
+        return cache.run(key, () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(result);
+        }).get().getText();
+    }
+
+    @Test
+    public void answersRetriesFromTheCache() throws Exception {
+        String key = IdempotencyCache.keyFor("a", "t", "{}", "1", null);
+        assertEquals("first", run(key, KernelTool.Result.success("first")));
+        assertEquals("first", run(key, KernelTool.Result.success("second")));
+        assertEquals(1, runs.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void runsFailedCallsAgain() throws Exception {
+        String key = IdempotencyCache.keyFor("a", "t", "{}", "1", null);
+        assertEquals("no", run(key, KernelTool.Result.error("no")));
+        assertEquals("yes", run(key, KernelTool.Result.success("yes")));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void scopesImplicitKeysToTheClient() {
+        String key = IdempotencyCache.keyFor("a", "t", "{\"x\":1}", "1", null);
+        assertEquals(key, IdempotencyCache.keyFor("a", "t", "{\"x\":1}", "1", null));
+        assertNotEquals(key, IdempotencyCache.keyFor("b", "t", "{\"x\":1}", "1", null));
+        assertNotEquals(key, IdempotencyCache.keyFor("a", "t", "{\"x\":1}", "2", null));
+        assertNotEquals(key, IdempotencyCache.keyFor("a", "t", "{\"x\":2}", "1", null));
+        assertNotEquals(key, IdempotencyCache.keyFor("a", "u", "{\"x\":1}", "1", null));
+    }
+
+    @Test
+    public void scopesExplicitKeysToTheClient() {
+        String key = IdempotencyCache.keyFor("a", "t", "{\"x\":1}", "1", "k");
+        // The arguments and request id don't matter once there is an explicit key.
+        assertEquals(key, IdempotencyCache.keyFor("a", "t", "{\"x\":2}", "7", "k"));
+        assertNotEquals(key, IdempotencyCache.keyFor("b", "t", "{\"x\":1}", "1", "k"));
+        assertNotEquals(key, IdempotencyCache.keyFor("a", "u", "{\"x\":1}", "1", "k"));
+    }
+
+    @Test
+    public void doesNotCacheNotifications() {
+        assertNull(IdempotencyCache.keyFor("a", "t", "{}", null, null));
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class JsonRpcCodecTest {
+    private final JsonRpcCodec codec = new JsonRpcCodec(new GsonBuilder().disableHtmlEscaping().create());
+
+    private static byte[] request(byte[] text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"text\":\"".getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(text);
+        out.writeBytes("\"}}".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private String decodeText(byte[] text) throws IOException {
+        byte[] body = request(text);
+        return codec.read(body, 0, body.length).requests.get(0).getParams().get("text").getAsString();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) bytes[i] = (byte) values[i];
+        return bytes;
+    }
+
+    @Test
+    public void decodesSurrogatePairs() throws IOException {
+        String text = "a\uD83D\uDE00b\u00e9\u20ac";
+        assertEquals(text, decodeText(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(text, decodeText("a\\uD83D\\uDE00b\\u00e9\\u20ac".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // JsonReader reads in chunks; a pair has to survive being split across two reads.
+    @Test
+    public void decodesSurrogatePairsAcrossReadBoundaries() throws IOException {
+        for (int prefix = 1000; prefix < 1100; prefix++) {
+            char[] padding = new char[prefix];
+            Arrays.fill(padding, 'x');
+            String text = new String(padding) + "\uD83D\uDE00\uD83C\uDF89";
+            byte[] body = request(text.getBytes(StandardCharsets.UTF_8));
+            assertEquals(text, codec.read(new ByteArrayInputStream(body), body.length).requests.get(0).getParams().get("text").getAsString());
+        }
+    }
+
+    @Test
+    public void encodesSurrogatePairsAsFourByteSequences() throws IOException {
+        String text = "a\uD83D\uDE00b\u00e9\u20ac";
+        byte[] encoded = codec.encode(JsonRpcResponse.text(new JsonPrimitive(1), text)).toByteArray();
+        String expected = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"content\":[{\"type\":\"text\",\"text\":\"" + text + "\"}]}}";
+        assertEquals(expected, new String(encoded, StandardCharsets.UTF_8));
+        assertTrue(Arrays.equals(expected.getBytes(StandardCharsets.UTF_8), encoded));
+    }
+
+    @Test
+    public void encodesUnpairedSurrogatesAsReplacement() throws IOException {
+        byte[] encoded = codec.encode(JsonRpcResponse.text(new JsonPrimitive(1), "a\uD83Db\uDE00c")).toByteArray();
+        assertTrue(new String(encoded, StandardCharsets.UTF_8).contains("\"text\":\"a?b?c\""));
+    }
+
+    @Test
+    public void replacesMalformedBytes() throws IOException {
+        // Stray continuation byte, lead byte without its continuation, invalid lead byte.
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0x80, 'b')));
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xc3, 'b')));
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xff, 'b')));
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xe2, 0x82, 'b')));
+    }
+
+    @Test
+    public void rejectsOverlongAndOutOfRangeSequences() throws IOException {
+        // Overlong '/', which must not decode to a path separator.
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xc0, 0xaf, 'b')));
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xe0, 0x80, 0xaf, 'b')));
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xf0, 0x80, 0x80, 0xaf, 'b')));
+        // A UTF-16 surrogate encoded on its own.
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xed, 0xa0, 0x80, 'b')));
+        // Past U+10FFFF.
+        assertEquals("a\uFFFDb", decodeText(bytes('a', 0xf4, 0x90, 0x80, 0x80, 'b')));
+    }
+
+    @Test
+    public void echoesNullIds() throws IOException {
+        String single = new String(codec.encode(JsonRpcResponse.error(JsonNull.INSTANCE, -32600, "Invalid Request")).toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32600,\"message\":\"Invalid Request\"}}", single);
+        String batch = new String(codec.encode(Arrays.asList(JsonRpcResponse.text(JsonNull.INSTANCE, "x"))).toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(batch, batch.startsWith("[{\"jsonrpc\":\"2.0\",\"id\":null,"));
+    }
+}
@@ -0,0 +1,276 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** JSON-RPC dispatch through {@link KernelServer#handleMessage}, with no sockets involved. */
+public class KernelServerTest {
+    private final BoundedAsyncRunner runner = new BoundedAsyncRunner(2, 4, 2, 0, 1);
+    private final ThreadPoolExecutor dispatchPool = KernelExecutors.newBoundedPool("test-dispatch", 2, 8, new ThreadPoolExecutor.CallerRunsPolicy());
+    private final ToolExecutor toolExecutor = new ToolExecutor(Runnable::run, 2, 1);
+    private final KernelServer server = new KernelServer(0, KernelInstance.forUid(0, 1, 4, 1L << 30), runner,
+            new SseSessionRegistry(), dispatchPool, toolExecutor, RateLimiter.unlimited(), new StartupTrace(System.nanoTime()));
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch blockStarted = new CountDownLatch(1);
+    private final CountDownLatch blockRelease = new CountDownLatch(1);
+
+    private static final class TestTool implements KernelTool {
+        private final String name;
+        private final Callable body;
+
+        interface Callable {
+            Result call(JsonObject arguments) throws Exception;
+        }
+
+        TestTool(String name, Callable body) {
+            this.name = name;
+            this.body = body;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        @Override
+        public JsonObject getInputSchema() {
+            return new JsonObject();
+        }
+
+        @Override
+        public Threading getThreading() {
+            return Threading.IO;
+        }
+
+        @Override
+        public long getTimeoutMillis() {
+            return 10000;
+        }
+
+        @Override
+        public Result call(JsonObject arguments) throws Exception {
+            return body.call(arguments);
+        }
+    }
+
+    private static final class TestPeer implements RpcPeer {
+        final BlockingQueue<JsonObject> sent = new LinkedBlockingQueue<>();
+        private final String id;
+
+        TestPeer(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public boolean send(String json) {
+            sent.add(JsonParser.parseString(json).getAsJsonObject());
+            return true;
+        }
+    }
+
+    @Before
+    public void registerTools() {
+        server.getTools().register(new TestTool("count", arguments -> KernelTool.Result.success("call " + calls.incrementAndGet())));
+        server.getTools().register(new TestTool("block", arguments -> {
+            blockStarted.countDown();
+            blockRelease.await();
+            return KernelTool.Result.success("released");
+        }));
+        server.markToolsReady();
+    }
+
+    @After
+    public void stop() {
+        blockRelease.countDown();
+        toolExecutor.shutdown(0, TimeUnit.SECONDS);
+        dispatchPool.shutdownNow();
+        runner.shutdown();
+    }
+
+    private JsonElement send(String json, RpcPeer peer, String client) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        JsonRpcCodec.Encoded reply = server.handleMessage(body, 0, body.length, peer, client);
+        return reply == null ? null : JsonParser.parseString(new String(reply.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static String call(int id, String tool) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"tools/call\",\"params\":{\"name\":\"" + tool + "\"}}";
+    }
+
+    private static String cancel(int id) {
+        return "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/cancelled\",\"params\":{\"requestId\":" + id + "}}";
+    }
+
+    private static int errorCode(JsonElement reply) {
+        return reply.getAsJsonObject().getAsJsonObject("error").get("code").getAsInt();
+    }
+
+    @Test
+    public void answersBatchesInRequestOrderWithoutNotifications() throws IOException {
+        JsonElement reply = send("["
+                + "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\"},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"no/such/method\"},"
+                + call(3, "count") + ","
+                + "{\"id\":4}"
+                + "]", null, "a");
+        JsonArray replies = reply.getAsJsonArray();
+        assertEquals(4, replies.size());
+        assertEquals(1, replies.get(0).getAsJsonObject().get("id").getAsInt());
+        assertTrue(replies.get(0).getAsJsonObject().has("result"));
+        assertEquals(2, replies.get(1).getAsJsonObject().get("id").getAsInt());
+        assertEquals(-32601, errorCode(replies.get(1)));
+        assertEquals(3, replies.get(2).getAsJsonObject().get("id").getAsInt());
+        assertTrue(replies.get(2).toString(), replies.get(2).toString().contains("call 1"));
+        assertEquals(4, replies.get(3).getAsJsonObject().get("id").getAsInt());
+        assertEquals(-32600, errorCode(replies.get(3)));
+    }
+
+    @Test
+    public void rejectsEmptyBatches() throws IOException {
+        JsonElement reply = send("[]", null, "a");
+        assertTrue(reply.isJsonObject());
+        assertTrue(reply.getAsJsonObject().get("id").isJsonNull());
+        assertEquals(-32600, errorCode(reply));
+    }
+
+    @Test
+    public void rejectsBatchesOverTheLimit() throws IOException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 65; i++) {
+            if (i > 0) batch.append(',');
+            batch.append("{\"jsonrpc\":\"2.0\",\"id\":").append(i).append(",\"method\":\"initialize\"}");
+        }
+        JsonElement reply = send(batch.append(']').toString(), null, "a");
+        assertEquals(-32600, errorCode(reply));
+    }
+
+    @Test
+    public void sendsNothingForNotifications() throws IOException {
+        assertNull(send("[{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/cancelled\",\"params\":{\"requestId\":9}}]", null, "a"));
+        assertNull(send("{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}", null, "a"));
+    }
+
+    @Test
+    public void sendsToolCallRepliesToThePeer() throws Exception {
+        TestPeer peer = new TestPeer("p1");
+        assertNull(send(call(7, "count"), peer, "p1"));
+        JsonObject reply = peer.sent.poll(5, TimeUnit.SECONDS);
+        assertEquals(7, reply.get("id").getAsInt());
+        assertTrue(reply.toString(), reply.toString().contains("call 1"));
+    }
+
+    @Test
+    public void cancelsInlineCallsOnlyForTheClientThatMadeThem() throws Exception {
+        CompletableFuture<JsonElement> reply = CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(call(5, "block"), null, "a");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(blockStarted.await(5, TimeUnit.SECONDS));
+
+        // Same request id, another client: not theirs to cancel.
+        assertNull(send(cancel(5), null, "b"));
+        Thread.sleep(100);
+        assertFalse(reply.isDone());
+
+        assertNull(send(cancel(5), null, "a"));
+        assertEquals(-32800, errorCode(reply.get(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void cancelsPeerCallsOnlyThroughThatPeer() throws Exception {
+        TestPeer owner = new TestPeer("p1");
+        TestPeer other = new TestPeer("p2");
+        assertNull(send(call(5, "block"), owner, "p1"));
+        assertTrue(blockStarted.await(5, TimeUnit.SECONDS));
+
+        assertNull(send(cancel(5), other, "p2"));
+        // Nor does an inline client with the peer's name get to cancel it.
+        assertNull(send(cancel(5), null, "p1"));
+        blockRelease.countDown();
+        JsonObject reply = owner.sent.poll(5, TimeUnit.SECONDS);
+        assertEquals(5, reply.get("id").getAsInt());
+        assertTrue(reply.toString(), reply.toString().contains("released"));
+    }
+
+    @Test
+    public void dropsTheReplyToACancelledPeerCall() throws Exception {
+        TestPeer owner = new TestPeer("p1");
+        assertNull(send(call(5, "block"), owner, "p1"));
+        assertTrue(blockStarted.await(5, TimeUnit.SECONDS));
+        assertNull(send(cancel(5), owner, "p1"));
+        // MCP: a cancelled call gets no reply.
+        assertNull(owner.sent.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    private static String callWithKey(int id, String tool, String key) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"tools/call\",\"params\":{\"name\":\"" + tool
+                + "\",\"_meta\":{\"idempotencyKey\":\"" + key + "\"}}}";
+    }
+
+    private static String text(JsonElement reply) {
+        return reply.getAsJsonObject().getAsJsonObject("result").getAsJsonArray("content").get(0).getAsJsonObject().get("text").getAsString();
+    }
+
+    @Test
+    public void runsRepeatedInlineCallsWithoutAKeyEveryTime() throws IOException {
+        // Agents behind one address all count ids from 1; a repeat may well be someone else's call.
+        assertEquals("call 1", text(send(call(1, "count"), null, "127.0.0.1")));
+        assertEquals("call 2", text(send(call(1, "count"), null, "127.0.0.1")));
+    }
+
+    @Test
+    public void deduplicatesExplicitKeysPerClient() throws IOException {
+        assertEquals("call 1", text(send(callWithKey(1, "count", "k"), null, "a")));
+        assertEquals("call 1", text(send(callWithKey(2, "count", "k"), null, "a")));
+        // Another client that happens to use the same key gets its own call.
+        assertEquals("call 2", text(send(callWithKey(1, "count", "k"), null, "b")));
+    }
+
+    @Test
+    public void deduplicatesPeerRetriesByRequestId() throws Exception {
+        TestPeer peer = new TestPeer("p1");
+        send(call(1, "count"), peer, "p1");
+        assertEquals("call 1", text(peer.sent.poll(5, TimeUnit.SECONDS)));
+        send(call(1, "count"), peer, "p1");
+        assertEquals("call 1", text(peer.sent.poll(5, TimeUnit.SECONDS)));
+        // The same request id from another session is a different call.
+        TestPeer other = new TestPeer("p2");
+        send(call(1, "count"), other, "p2");
+        assertEquals("call 2", text(other.sent.poll(5, TimeUnit.SECONDS)));
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,91 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+    @Test
+    public void refusesOnceTheBurstIsSpentWithTheTimeToRefill() {
+        // 10 tokens a second: one token every 100 ms.
+        RateLimiter limiter = new RateLimiter(2, 10);
+        assertEquals(0, limiter.acquire("a", 1));
+        assertEquals(0, limiter.acquire("a", 1));
+        long retryAfterMillis = limiter.acquire("a", 1);
+        assertTrue("retryAfterMs " + retryAfterMillis, retryAfterMillis > 50 && retryAfterMillis <= 100);
+        assertEquals(1, limiter.getThrottled());
+    }
+
+    @Test
+    public void admitsAgainAfterTheAdvertisedDelay() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1, 20);
+        assertEquals(0, limiter.acquire("a", 1));
+        long retryAfterMillis = limiter.acquire("a", 1);
+        assertTrue(retryAfterMillis > 0);
+        Thread.sleep(retryAfterMillis + 5);
+        assertEquals(0, limiter.acquire("a", 1));
+    }
+
+    @Test
+    public void refusedRequestsTakeNothing() {
+        RateLimiter limiter = new RateLimiter(4, 10);
+        assertEquals(0, limiter.acquire("a", 3));
+        // A cost of 3 doesn't fit the 1 left and isn't charged; a cost of 1 still does.
+        assertTrue(limiter.acquire("a", 3) > 0);
+        assertEquals(0, limiter.acquire("a", 1));
+    }
+
+    @Test
+    public void chargesCostsAboveTheBurstInFull() {
+        RateLimiter limiter = new RateLimiter(2, 10);
+        assertEquals(0, limiter.acquire("a", 20));
+        // 18 tokens in debt plus the one asked for, at 10 a second.
+        long retryAfterMillis = limiter.acquire("a", 1);
+        assertTrue("retryAfterMs " + retryAfterMillis, retryAfterMillis > 1800 && retryAfterMillis <= 1900);
+    }
+
+    @Test
+    public void batchesCostAsMuchAsTheirCalls() {
+        RateLimiter limiter = new RateLimiter(40, 10);
+        // 64 calls of a tool costing 20, sent as one batch.
+        assertEquals(0, limiter.acquire("a", 64 * 20));
+        long retryAfterMillis = limiter.acquire("a", 1);
+        assertTrue("retryAfterMs " + retryAfterMillis, retryAfterMillis > 124000 && retryAfterMillis <= 124100);
+        // A second oversized batch waits for a full bucket, not just for one token.
+        assertTrue(limiter.acquire("a", 64 * 20) > retryAfterMillis);
+    }
+
+    @Test
+    public void keepsClientsApart() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals(0, limiter.acquire("a", 1));
+        assertTrue(limiter.acquire("a", 1) > 0);
+        assertEquals(0, limiter.acquire("b", 1));
+        assertEquals(2, limiter.getClients());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedBucketWhenFull() {
+        RateLimiter limiter = new RateLimiter(1, 0.001);
+        for (int i = 0; i < 1024; i++) {
+            assertEquals(0, limiter.acquire("c" + i, 1));
+        }
+        // No bucket has refilled, so c0's, the oldest, makes room.
+        assertEquals(0, limiter.acquire("new", 1));
+        assertEquals(1024, limiter.getClients());
+        assertTrue(limiter.acquire("c1", 1) > 0);
+        assertEquals(0, limiter.acquire("c0", 1));
+    }
+
+    @Test
+    public void notificationsAndUnlimitedLimitersAreFree() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals(0, limiter.acquire("a", 1));
+        assertEquals(0, limiter.acquire("a", 0));
+        RateLimiter unlimited = RateLimiter.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, unlimited.acquire("a", 20));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.clawminium.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ToolExecutorTest {
+    private static final class SlowTool implements KernelTool {
+        final CountDownLatch started = new CountDownLatch(1);
+        private final long sleepMillis;
+
+        SlowTool(long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public String getName() {
+            return "slow";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Sleeps, then succeeds.";
+        }
+
+        @Override
+        public JsonObject getInputSchema() {
+            return new JsonObject();
+        }
+
+        @Override
+        public Threading getThreading() {
+            return Threading.IO;
+        }
+
+        @Override
+        public long getTimeoutMillis() {
+            return 60000;
+        }
+
+        @Override
+        public Result call(JsonObject arguments) throws Exception {
+            started.countDown();
+            Thread.sleep(sleepMillis);
+            return Result.success("done");
+        }
+    }
+
+    private static CompletableFuture<KernelTool.Result> submit(ToolExecutor executor, KernelTool tool) {
+        return executor.submit(tool, new JsonObject(), KernelTool.Progress.NONE, KernelTool.Effects.NONE, "a");
+    }
+
+    @Test
+    public void shutdownLetsRunningCallsFinish() throws Exception {
+        ToolExecutor executor = new ToolExecutor(Runnable::run, 1, 1);
+        SlowTool tool = new SlowTool(200);
+        CompletableFuture<KernelTool.Result> running = submit(executor, tool);
+        assertTrue(tool.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<KernelTool.Result> queued = submit(executor, new SlowTool(0));
+
+        executor.shutdown(5, TimeUnit.SECONDS);
+        assertTrue(running.isDone());
+        assertEquals("done", running.get().getText());
+        // Never started, so it has nothing to report.
+        assertFalse(queued.isDone());
+    }
+
+    @Test
+    public void shutdownInterruptsCallsThatOutlastIt() throws Exception {
+        ToolExecutor executor = new ToolExecutor(Runnable::run, 1, 1);
+        SlowTool tool = new SlowTool(60000);
+        CompletableFuture<KernelTool.Result> running = submit(executor, tool);
+        assertTrue(tool.started.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        executor.shutdown(100, TimeUnit.MILLISECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertTrue(running.isCompletedExceptionally());
+    }
+}
@@ -13,6 +13,8 @@ public class MainActivity extends AppCompatActivity {
 
     private ConstraintLayout mainLayout;
     private TextView statusText;
+    // The action currently rendered, so a repeated intent doesn't redraw the same state.
+    private String renderedAction;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,6 +54,7 @@ public class MainActivity extends AppCompatActivity {
         if (intent == null || intent.getAction() == null) return;
 
         String action = intent.getAction();
+        if (action.equals(renderedAction)) return;
         if ("com.clawminium.intent.action.SAVE_WORLD".equals(action)) {
             saveWorld();
         } else if ("com.clawminium.intent.action.DESTROY_WORLD".equals(action)) {
@@ -60,12 +63,14 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void saveWorld() {
+        renderedAction = "com.clawminium.intent.action.SAVE_WORLD";
         mainLayout.setBackgroundColor(Color.GREEN);
         statusText.setText("Thank you for saving the world!");
         statusText.setTextColor(Color.BLACK);
     }
 
     private void destroyWorld() {
+        renderedAction = "com.clawminium.intent.action.DESTROY_WORLD";
         mainLayout.setBackgroundColor(Color.RED);
         statusText.setText("You just destroyed the world!");
         statusText.setTextColor(Color.WHITE);